@@ -0,0 +1,59 @@
+package io.github.edsuns.benchmark;
+
+import java.util.Objects;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:02
+ */
+public class Book {
+    private Long id;
+    private String name;
+    private int pages;
+
+    public Book() {
+    }
+
+    public Book(Long id, String name, int pages) {
+        this.id = id;
+        this.name = name;
+        this.pages = pages;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public void setPages(int pages) {
+        this.pages = pages;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Book book = (Book) o;
+        return pages == book.pages && Objects.equals(id, book.id) && Objects.equals(name, book.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, pages);
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.CacheCodec;
+import io.github.edsuns.codec.BinaryCacheCodec;
+import io.github.edsuns.codec.JsonCacheCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value serialization of {@link io.github.edsuns.redis.RedisCacheStorage} by its codecs.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"json", "binary"})
+    private String codecName;
+
+    private CacheCodec codec;
+    private Book book;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("json".equals(codecName)) {
+            codec = new JsonCacheCodec();
+        } else {
+            BinaryCacheCodec binary = new BinaryCacheCodec();
+            binary.register(1, Book.class);
+            codec = binary;
+        }
+        book = FakeDatabase.book(42L);
+        encoded = codec.encode(book);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(book);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return codec.decode(encoded);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.CacheManagerImpl;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache key composition of a batch of ids.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:24
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComposeKeyBenchmark {
+    @Param({"1", "100", "1000"})
+    private int batchSize;
+
+    private KeyComposer composer;
+    private List<Long> ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        composer = new KeyComposer();
+        ids = new ArrayList<>(batchSize);
+        for (long id = 0; id < batchSize; id++) {
+            ids.add(id * 7919);
+        }
+    }
+
+    @Benchmark
+    public List<String> composeKey() {
+        return composer.composeKey(ids);
+    }
+
+    private static class KeyComposer extends CacheManagerImpl<Book, Long> {
+        KeyComposer() {
+            super(new MemoryCacheStorage(), new FakeDatabase(0), Book::getId);
+        }
+
+        @Override
+        protected List<String> composeKey(Collection<Long> ids) {
+            return super.composeKey(ids);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.Database;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Database} whose every row exists, every call parks for a fixed latency.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:04
+ */
+@ParametersAreNonnullByDefault
+public class FakeDatabase implements Database<Book, Long> {
+    private final long latencyNanos;
+
+    public FakeDatabase(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public List<Book> load(Collection<Long> ids) {
+        sleep();
+        List<Book> books = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            books.add(book(id));
+        }
+        return books;
+    }
+
+    @Override
+    public void update(Collection<Book> entities) {
+        sleep();
+    }
+
+    @Override
+    public List<Long> getIdsByUpdatedBetween(long start, long end) {
+        sleep();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getEntityName() {
+        return "book";
+    }
+
+    public static Book book(long id) {
+        return new Book(id, "book" + id, (int) (id % 1000));
+    }
+
+    private void sleep() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.CacheManager;
+import io.github.edsuns.CacheManagerImpl;
+import io.github.edsuns.LongCacheManagerImpl;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheManager#getByIds} at different hit ratios and batch sizes.
+ * <p>
+ * The missed ids are evicted before every invocation, so every invocation misses the same share of the batch.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:12
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetByIdsBenchmark {
+    /**
+     * percentage of the batch that is cached
+     */
+    @Param({"0", "50", "100"})
+    private int hitRatio;
+    @Param({"1", "10", "100", "1000"})
+    private int batchSize;
+    @Param({"0"})
+    private long databaseLatencyMicros;
+
+    private CacheManager<Book, Long> cacheManager;
+    private LongCacheManagerImpl<Book> longCacheManager;
+    private List<Long> ids;
+    private long[] longIds;
+    private List<Long> missedIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        FakeDatabase database = new FakeDatabase(databaseLatencyMicros);
+        cacheManager = new CacheManagerImpl<>(storage, database, Book::getId);
+        longCacheManager = new LongCacheManagerImpl<>(storage, database, Book::getId);
+        ids = new ArrayList<>(batchSize);
+        longIds = new long[batchSize];
+        for (long id = 0; id < batchSize; id++) {
+            ids.add(id);
+            longIds[(int) id] = id;
+        }
+        missedIds = ids.subList(batchSize * hitRatio / 100, batchSize);
+        cacheManager.getByIds(ids);
+    }
+
+    @Setup(Level.Invocation)
+    public void evict() {
+        if (!missedIds.isEmpty()) {
+            cacheManager.delete(missedIds);
+        }
+    }
+
+    @Benchmark
+    public List<Book> getByIds() {
+        return cacheManager.getByIds(ids);
+    }
+
+    @Benchmark
+    public List<Book> getByLongIds() {
+        return longCacheManager.getByIds(longIds);
+    }
+}
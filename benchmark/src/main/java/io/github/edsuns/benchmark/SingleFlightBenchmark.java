@@ -0,0 +1,63 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.util.BatchSingleFlight;
+import io.github.edsuns.util.SingleFlight;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link SingleFlight#call} and {@link BatchSingleFlight#call} under contention,
+ * the threads call on a few keys so most calls join an in-flight one.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class SingleFlightBenchmark {
+    @Param({"1", "16"})
+    private int keys;
+    @Param({"0", "50"})
+    private long loadLatencyMicros;
+
+    private final SingleFlight<Long> single = new SingleFlight<>();
+    private final BatchSingleFlight<Long, Book> batchSingle = new BatchSingleFlight<>();
+    private long loadLatencyNanos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        loadLatencyNanos = TimeUnit.MICROSECONDS.toNanos(loadLatencyMicros);
+    }
+
+    @Benchmark
+    public Book singleFlight() {
+        long key = ThreadLocalRandom.current().nextInt(keys);
+        return single.call(key, () -> load(key));
+    }
+
+    @Benchmark
+    public Map<Long, Book> batchSingleFlight() {
+        long key = ThreadLocalRandom.current().nextInt(keys);
+        return batchSingle.call(Collections.singletonList(key),
+                owned -> owned.stream().collect(Collectors.toMap(Function.identity(), this::load)));
+    }
+
+    private Book load(long id) {
+        if (loadLatencyNanos > 0) {
+            LockSupport.parkNanos(loadLatencyNanos);
+        }
+        return FakeDatabase.book(id);
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.edsuns.benchmark;
+
+import io.github.edsuns.CacheManager;
+import io.github.edsuns.CacheManagerImpl;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheManager#updateByIds} of cached entities, one version read and one CAS put per call.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateByIdsBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    private int batchSize;
+    @Param({"0"})
+    private long databaseLatencyMicros;
+
+    private CacheManager<Book, Long> cacheManager;
+    private List<Book> books;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cacheManager = new CacheManagerImpl<>(new MemoryCacheStorage(),
+                new FakeDatabase(databaseLatencyMicros), Book::getId);
+        books = new ArrayList<>(batchSize);
+        List<Long> ids = new ArrayList<>(batchSize);
+        for (long id = 0; id < batchSize; id++) {
+            books.add(FakeDatabase.book(id));
+            ids.add(id);
+        }
+        cacheManager.getByIds(ids);
+    }
+
+    @Benchmark
+    public void updateByIds() {
+        cacheManager.updateByIds(books);
+    }
+}
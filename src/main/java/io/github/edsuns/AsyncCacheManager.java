@@ -0,0 +1,26 @@
+package io.github.edsuns;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CacheManager}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 16:17
+ */
+@ParametersAreNonnullByDefault
+public interface AsyncCacheManager<X, ID> {
+    CompletableFuture<List<X>> getByIdsAsync(Collection<ID> ids);
+
+    CompletableFuture<Void> updateByIdsAsync(Collection<X> entities);
+
+    /**
+     * Sets null cache when delete data.
+     */
+    CompletableFuture<Void> setNullsAsync(Collection<ID> ids);
+
+    CompletableFuture<Void> deleteAsync(Collection<ID> ids);
+}
@@ -0,0 +1,254 @@
+package io.github.edsuns;
+
+import io.github.edsuns.util.BatchSingleFlight;
+import io.github.edsuns.util.NamedThreadFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link CacheManagerImpl} that also serves {@link AsyncCacheManager} without blocking a thread on I/O.
+ * <p>
+ * Database loads join the in-flight loads per id through futures.
+ * A {@link Database} that is not an {@link AsyncDatabase} is called on the executor.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 16:25
+ */
+@ParametersAreNonnullByDefault
+public class AsyncCacheManagerImpl<X, ID> extends CacheManagerImpl<X, ID> implements AsyncCacheManager<X, ID>, AutoCloseable {
+    protected final AsyncCacheStorage asyncStorage;
+    protected final BatchSingleFlight<ID, X> asyncSingle;
+    protected final Executor executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * The blocking calls of a {@link Database} that is not an {@link AsyncDatabase} run on a pool of
+     * two threads per processor, which is shut down by {@link #close()}.
+     */
+    public <S extends CacheStorage & AsyncCacheStorage> AsyncCacheManagerImpl(
+            S cacheStorage, Database<X, ID> database, Function<X, ID> idGetter) {
+        this(cacheStorage, database, idGetter, new CacheManagerConfig(), newDatabaseExecutor(), true);
+    }
+
+    /**
+     * @param executor runs the blocking calls of a {@link Database} that is not an {@link AsyncDatabase}
+     */
+    public <S extends CacheStorage & AsyncCacheStorage> AsyncCacheManagerImpl(
+            S cacheStorage, Database<X, ID> database, Function<X, ID> idGetter,
+            CacheManagerConfig config, Executor executor) {
+        this(cacheStorage, database, idGetter, config, executor, false);
+    }
+
+    private <S extends CacheStorage & AsyncCacheStorage> AsyncCacheManagerImpl(
+            S cacheStorage, Database<X, ID> database, Function<X, ID> idGetter,
+            CacheManagerConfig config, Executor executor, boolean ownsExecutor) {
+        super(cacheStorage, database, idGetter, config);
+        this.asyncStorage = cacheStorage;
+        // share the flights with the blocking calls if possible
+        this.asyncSingle = perIdSingle != null ? perIdSingle
+                : new BatchSingleFlight<>(database.getEntityName(), config.getMetrics());
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    private static ExecutorService newDatabaseExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("cashe-database"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    @Override
+    public CompletableFuture<List<X>> getByIdsAsync(Collection<ID> ids) {
+        Collection<ID> existingIds = filterAbsent(ids);
+        CompletableFuture<Map<ID, CacheValue>> cached = hotKeys == null ? getIdValueMapAsync(existingIds)
+                : hotKeys.getAsync(existingIds, this::getIdValueMapAsync, this::getVersionMapAsync);
+        return cached.handle((cacheMap, getError) -> {
+            if (getError != null) {
+                Throwable cause = unwrap(getError);
+                if (cause instanceof CacheUnavailableException) {
+                    return CompletableFuture.supplyAsync(
+                            () -> loadDegraded(ids, existingIds, (CacheUnavailableException) cause), executor);
+                }
+                throw getError instanceof CompletionException
+                        ? (CompletionException) getError : new CompletionException(getError);
+            }
+            Map<ID, X> result = new HashMap<>((int) (ids.size() / .75 + 1));
+            Map<ID, CacheValue> unCached = collectCached(existingIds, cacheMap, result);
+            if (unCached == null) {
+                return CompletableFuture.completedFuture(collect(ids, result));
+            }
+            return loadAsync(unCached.keySet()).handle((data, loadError) -> {
+                if (loadError != null) {
+                    return putPartialAsync(unCached, unwrap(loadError));
+                }
+                return putCacheAsync(values(unCached, data)).thenApply(failed -> {
+                    data.forEach(x -> result.put(idGetter.apply(x), x));
+                    return collect(ids, result);
+                });
+            }).thenCompose(Function.identity());
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Same as {@link #putPartial(Map, PartialLoadException)} if the load failed partially,
+     * the returned future fails by the load error anyway.
+     */
+    private CompletableFuture<List<X>> putPartialAsync(Map<ID, CacheValue> unCached, Throwable loadError) {
+        CompletableFuture<List<X>> failed = new CompletableFuture<>();
+        Map<String, CacheValue> values = loadError instanceof PartialLoadException
+                ? partialValues(unCached, (PartialLoadException) loadError) : Collections.emptyMap();
+        if (values.isEmpty()) {
+            failed.completeExceptionally(loadError);
+            return failed;
+        }
+        putCacheAsync(values).whenComplete((v, e) -> {
+            if (e != null) {
+                loadError.addSuppressed(unwrap(e));
+            }
+            failed.completeExceptionally(loadError);
+        });
+        return failed;
+    }
+
+    @Override
+    public CompletableFuture<Void> updateByIdsAsync(Collection<X> entities) {
+        List<ID> ids = entities.stream().map(idGetter).collect(Collectors.toList());
+        return getVersionMapAsync(ids)
+                .thenCompose(versionMap -> updateDatabaseAsync(ids, entities)
+                        .thenCompose(v -> putCacheAsync(versionedValues(versionMap, entities))))
+                .thenCompose(this::invalidateCacheAsync)
+                .whenComplete((v, e) -> invalidateHotKeys(ids));
+    }
+
+    @Override
+    public CompletableFuture<Void> setNullsAsync(Collection<ID> ids) {
+        return getVersionMapAsync(ids)
+                .thenCompose(versionMap -> putCacheAsync(versionedValues(versionMap, Collections.emptyList())))
+                .thenCompose(this::invalidateCacheAsync)
+                .whenComplete((v, e) -> invalidateHotKeys(ids));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Collection<ID> ids) {
+        return asyncStorage.deleteAsync(composeKey(ids))
+                .whenComplete((v, e) -> invalidateHotKeys(ids));
+    }
+
+    /**
+     * @see #invalidateCache(List)
+     */
+    protected CompletableFuture<Void> invalidateCacheAsync(List<String> keys) {
+        long maxStaleMillis = config.getStaleWhileRevalidateMillis();
+        return maxStaleMillis <= 0 ? asyncStorage.deleteAsync(keys) : asyncStorage.markStaleAsync(keys, maxStaleMillis);
+    }
+
+    /**
+     * @see #load(Set)
+     */
+    protected CompletableFuture<List<X>> loadAsync(Set<ID> ids) {
+        Set<ID> ownedIds = ConcurrentHashMap.newKeySet();
+        Queue<X> ownedData = new ConcurrentLinkedQueue<>();
+        AtomicReference<Throwable> ownedFailure = new AtomicReference<>();
+        return asyncSingle.callAsync(ids, owned -> loadDatabaseAsync(owned).whenComplete((data, e) -> {
+                    if (e == null) {
+                        ownedIds.addAll(owned);
+                        ownedData.addAll(data);
+                    } else {
+                        ownedFailure.set(unwrap(e));
+                    }
+                }).thenApply(this::toMap))
+                .handle((loaded, e) -> {
+                    if (e != null) {
+                        Throwable cause = unwrap(e);
+                        if (!(cause instanceof PartialLoadException) || cause == ownedFailure.get()) {
+                            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                        }
+                        // failed by the flight of another caller, whose loaded and failed ids don't cover the ids of this one
+                        List<ID> failedIds = new ArrayList<>(ids.size() - ownedIds.size());
+                        for (ID id : ids) {
+                            if (!ownedIds.contains(id)) {
+                                failedIds.add(id);
+                            }
+                        }
+                        throw new CompletionException(new PartialLoadException(new ArrayList<>(ownedData), failedIds, cause));
+                    }
+                    List<X> data = new ArrayList<>(loaded.size());
+                    for (X x : loaded.values()) {
+                        if (x != null) {
+                            data.add(x);
+                        }
+                    }
+                    return data;
+                });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private CompletableFuture<List<X>> loadDatabaseAsync(Collection<ID> ids) {
+        if (database instanceof AsyncDatabase) {
+            return ((AsyncDatabase<X, ID>) database).loadAsync(ids);
+        }
+        return CompletableFuture.supplyAsync(() -> loadDatabase(ids), executor);
+    }
+
+    /**
+     * @see #updateDatabase(Collection, Collection)
+     */
+    private CompletableFuture<Void> updateDatabaseAsync(Collection<ID> ids, Collection<X> entities) {
+        if (existenceFilter != null) {
+            // before the rows are visible, a false positive is harmless but a false negative is not
+            existenceFilter.put(ids);
+        }
+        CompletableFuture<Void> updated = database instanceof AsyncDatabase
+                ? ((AsyncDatabase<X, ID>) database).updateAsync(entities)
+                : CompletableFuture.runAsync(() -> database.update(entities), executor);
+        if (existenceFilter == null) {
+            return updated;
+        }
+        return updated.thenRun(() -> existenceFilter.put(ids));
+    }
+
+    private CompletableFuture<List<String>> putCacheAsync(Map<String, CacheValue> values) {
+        return asyncStorage.putAsync(values, ttl).thenApply(failedKeys -> {
+            if (!failedKeys.isEmpty()) {
+                metrics.recordConflicts(database.getEntityName(), failedKeys.size());
+            }
+            return failedKeys;
+        });
+    }
+
+    private CompletableFuture<Map<ID, CacheValue>> getIdValueMapAsync(Collection<ID> ids) {
+        return asyncStorage.getAsync(composeKey(ids), isTtlRead()).thenApply(values -> toIdValueMap(ids, values));
+    }
+
+    private CompletableFuture<Map<ID, Integer>> getVersionMapAsync(Collection<ID> ids) {
+        return asyncStorage.getVersionsAsync(composeKey(ids)).thenApply(versions -> toIdVersionMap(ids, versions));
+    }
+
+    /**
+     * Shuts down the executor if it was created by this manager.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private List<X> collect(Collection<ID> ids, Map<ID, X> result) {
+        List<X> list = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            list.add(result.get(id));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.edsuns;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CacheStorage}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 16:10
+ */
+@ParametersAreNonnullByDefault
+public interface AsyncCacheStorage {
+    /**
+     * @see CacheStorage#put(Map, TimeToLive)
+     */
+    CompletableFuture<List<String>> putAsync(Map<String, CacheValue> values, TimeToLive ttl);
+
+    /**
+     * @see CacheStorage#get(Collection)
+     */
+    CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys);
+
+    /**
+     * @see CacheStorage#get(Collection, boolean)
+     */
+    default CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys, boolean withTtl) {
+        return getAsync(keys);
+    }
+
+    /**
+     * @see CacheStorage#getVersions(Collection)
+     */
+    default CompletableFuture<List<Integer>> getVersionsAsync(Collection<String> keys) {
+        return getAsync(keys).thenApply(values -> {
+            List<Integer> versions = new ArrayList<>(values.size());
+            for (CacheValue value : values) {
+                versions.add(value == null ? null : value.getVersion());
+            }
+            return versions;
+        });
+    }
+
+    CompletableFuture<Void> deleteAsync(Collection<String> keys);
+
+    /**
+     * @see CacheStorage#markStale(Collection, long)
+     */
+    default CompletableFuture<Void> markStaleAsync(Collection<String> keys, long maxStaleMillis) {
+        return deleteAsync(keys);
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.edsuns;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link Database} with non-blocking access, used by {@link AsyncCacheManagerImpl} if implemented.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 16:14
+ */
+@ParametersAreNonnullByDefault
+public interface AsyncDatabase<X, ID> extends Database<X, ID> {
+
+    CompletableFuture<List<X>> loadAsync(Collection<ID> ids);
+
+    CompletableFuture<Void> updateAsync(Collection<X> entities);
+}
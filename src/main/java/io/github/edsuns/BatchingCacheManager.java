@@ -0,0 +1,190 @@
+package io.github.edsuns;
+
+import io.github.edsuns.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects the concurrent {@link #getByIds(Collection)} calls of many threads into one batch,
+ * so the batch costs one storage round trip and at most one database load.
+ * <p>
+ * A batch is dispatched when the window elapses since its first lookup,
+ * or as soon as it holds the max batch size of ids.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 13:10
+ */
+@ParametersAreNonnullByDefault
+public class BatchingCacheManager<X, ID> implements CacheManager<X, ID>, AutoCloseable {
+    private final CacheManager<X, ID> delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final boolean ownsExecutors;
+
+    private final Object lock = new Object();
+    private List<Lookup<X, ID>> pending = new ArrayList<>();
+    private int pendingIds;
+    @Nullable
+    private ScheduledFuture<?> timer;
+
+    public BatchingCacheManager(CacheManager<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize) {
+        this(delegate, window, unit, maxBatchSize,
+                Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cashe-batch-timer")),
+                Executors.newCachedThreadPool(new NamedThreadFactory("cashe-batch")), true);
+    }
+
+    /**
+     * @param scheduler schedules the dispatch of windows
+     * @param executor  runs the dispatched batches
+     */
+    public BatchingCacheManager(CacheManager<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize,
+                                ScheduledExecutorService scheduler, Executor executor) {
+        this(delegate, window, unit, maxBatchSize, scheduler, executor, false);
+    }
+
+    private BatchingCacheManager(CacheManager<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize,
+                                 ScheduledExecutorService scheduler, Executor executor, boolean ownsExecutors) {
+        if (window < 0 || maxBatchSize <= 0) throw new IllegalArgumentException();
+        this.delegate = delegate;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.ownsExecutors = ownsExecutors;
+    }
+
+    @Override
+    public List<X> getByIds(Collection<ID> ids) {
+        try {
+            return getByIdsAsync(ids).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<List<X>> getByIdsAsync(Collection<ID> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        Lookup<X, ID> lookup = new Lookup<>(ids);
+        List<Lookup<X, ID>> full = null;
+        synchronized (lock) {
+            pending.add(lookup);
+            pendingIds += ids.size();
+            if (pendingIds >= maxBatchSize) {
+                full = drain();
+            } else if (timer == null) {
+                timer = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            // the caller is going to wait for the batch anyway
+            dispatch(full);
+        }
+        return lookup.future;
+    }
+
+    /**
+     * Dispatches the pending lookups without waiting for the window.
+     */
+    public void flush() {
+        List<Lookup<X, ID>> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            executor.execute(() -> dispatch(batch));
+        }
+    }
+
+    private List<Lookup<X, ID>> drain() {
+        List<Lookup<X, ID>> batch = pending;
+        pending = new ArrayList<>();
+        pendingIds = 0;
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Lookup<X, ID>> batch) {
+        try {
+            Set<ID> ids = new LinkedHashSet<>();
+            for (Lookup<X, ID> lookup : batch) {
+                ids.addAll(lookup.ids);
+            }
+            List<X> values = delegate.getByIds(ids);
+            Map<ID, X> valueMap = new HashMap<>((int) (ids.size() / .75 + 1));
+            Iterator<X> it = values.iterator();
+            for (ID id : ids) {
+                valueMap.put(id, it.hasNext() ? it.next() : null);
+            }
+            for (Lookup<X, ID> lookup : batch) {
+                List<X> slice = new ArrayList<>(lookup.ids.size());
+                for (ID id : lookup.ids) {
+                    slice.add(valueMap.get(id));
+                }
+                lookup.future.complete(slice);
+            }
+        } catch (Throwable e) {
+            batch.forEach(lookup -> lookup.future.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void updateByIds(Collection<X> entities) {
+        delegate.updateByIds(entities);
+    }
+
+    @Override
+    public void setNulls(Collection<ID> ids) {
+        delegate.setNulls(ids);
+    }
+
+    @Override
+    public void delete(Collection<ID> ids) {
+        delegate.delete(ids);
+    }
+
+    @Override
+    public void scheduledRefreshUpdated() {
+        delegate.scheduledRefreshUpdated();
+    }
+
+    @Override
+    public void scheduledRefreshAll() {
+        delegate.scheduledRefreshAll();
+    }
+
+    @Override
+    public Map<ID, Integer> getHotIds() {
+        return delegate.getHotIds();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (ownsExecutors) {
+            scheduler.shutdown();
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private static class Lookup<X, ID> {
+        final Collection<ID> ids;
+        final CompletableFuture<List<X>> future = new CompletableFuture<>();
+
+        Lookup(Collection<ID> ids) {
+            this.ids = new ArrayList<>(ids);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.edsuns;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Encodes cached values for a {@link CacheStorage} that stores bytes.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 15:02
+ */
+@ParametersAreNonnullByDefault
+public interface CacheCodec {
+    /**
+     * @param value {@code null} means null cache
+     */
+    byte[] encode(@Nullable Object value);
+
+    /**
+     * @return {@code null} if the bytes is a null cache
+     */
+    @Nullable
+    Object decode(byte[] bytes);
+}
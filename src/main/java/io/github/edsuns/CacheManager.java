@@ -2,7 +2,9 @@ package io.github.edsuns;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author edsuns@qq.com
@@ -24,4 +26,11 @@ public interface CacheManager<X, ID> {
     void scheduledRefreshUpdated();
 
     void scheduledRefreshAll();
+
+    /**
+     * @return the hot ids to their estimated read frequencies, the most frequent first
+     */
+    default Map<ID, Integer> getHotIds() {
+        return Collections.emptyMap();
+    }
 }
@@ -0,0 +1,307 @@
+package io.github.edsuns;
+
+import io.github.edsuns.bloom.ExistenceFilter;
+import io.github.edsuns.metrics.CacheMetrics;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Options of {@link CacheManagerImpl}, the defaults keep the behaviors of a plain {@link CacheManagerImpl}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 12:20
+ */
+public class CacheManagerConfig {
+    /**
+     * join in-flight database loads per id instead of per set of un-cached ids
+     */
+    private boolean perIdSingleFlight;
+    /**
+     * ttl of cached values in millis, 0 means never expire
+     */
+    private long ttlMillis;
+    /**
+     * ttl of null caches in millis, usually shorter than {@link #ttlMillis}, 0 means never expire
+     */
+    private long nullTtlMillis;
+    /**
+     * max random jitter added to ttl, as a ratio of the ttl
+     */
+    private double ttlJitter;
+    /**
+     * ids loaded and put per chunk by {@link CacheManager#scheduledRefreshAll()}
+     */
+    private int refreshAllChunkSize = 500;
+    /**
+     * max chunks refreshed at the same time by {@link CacheManager#scheduledRefreshAll()}
+     */
+    private int refreshAllParallelism = 1;
+    /**
+     * max ids refreshed per second by {@link CacheManager#scheduledRefreshAll()}, 0 means unlimited
+     */
+    private double refreshAllRateLimit;
+    /**
+     * ids per chunk of {@link CacheManager#scheduledRefreshUpdated()}, 0 refreshes all updated ids at once
+     */
+    private int refreshUpdatedChunkSize;
+    /**
+     * max time window in millis that the watermark of {@link CacheManager#scheduledRefreshUpdated()}
+     * advances by at a time in chunked mode, so a failed refresh replays at most a window.
+     * 0 means the whole window since the last refresh
+     */
+    private long refreshUpdatedWindowMillis = 60_000;
+    /**
+     * records the stages of the cache manager and its single-flights
+     */
+    private CacheMetrics metrics = CacheMetrics.NOOP;
+    /**
+     * beta of the XFetch refresh-ahead, a cached value expires in less than
+     * {@code -recomputeCost * beta * ln(random)} is refreshed in background, 0 disables refresh-ahead
+     */
+    private double refreshAheadBeta;
+    /**
+     * runs the refresh-ahead and the refreshes of stale values, defaults to a single thread with a bounded queue
+     */
+    @Nullable
+    private Executor refreshAheadExecutor;
+    /**
+     * max staleness in millis of stale-while-revalidate, the invalidated values are marked stale instead of deleted,
+     * and served while refreshed in background, 0 deletes the invalidated values
+     */
+    private long staleWhileRevalidateMillis;
+    /**
+     * count of the hot ids kept in a local replica, 0 disables hot key detection
+     */
+    private int hotKeyTopN;
+    /**
+     * interval in millis that a local replica of a hot id is read from the storage again
+     */
+    private long hotKeyRevalidateMillis = 1000;
+    /**
+     * answers the ids that definitely don't exist before touching the storage or the database,
+     * built by {@link CacheManagerImpl#rebuildExistenceFilter()}
+     */
+    @Nullable
+    private ExistenceFilter<?> existenceFilter;
+    /**
+     * max ids per database load, the misses of a batch are loaded by concurrent chunks,
+     * 0 loads all misses in one call
+     */
+    private int loadChunkSize;
+    /**
+     * max chunks of a database load at the same time, the caller loads chunks itself
+     * and shares at most {@code loadParallelism - 1} workers with the concurrent loads of the manager
+     */
+    private int loadParallelism = 4;
+    /**
+     * target latency in millis of a chunk, the chunk size adapts to it, 0 keeps {@link #loadChunkSize}
+     */
+    private long loadChunkTargetMillis;
+    /**
+     * runs the chunks of database loads, defaults to virtual threads where available
+     */
+    @Nullable
+    private Executor loadExecutor;
+    /**
+     * max database loads at the same time while the storage is unavailable, a read beyond it fails fast
+     * with {@link CacheUnavailableException}, 0 means unlimited
+     */
+    private int degradedLoadConcurrency = 16;
+    /**
+     * lease in millis taken in the storage on a miss, so one instance of all loads an id at a time,
+     * the others poll for the value until the lease expires, 0 keeps the single-flight per instance
+     */
+    private long loadLeaseMillis;
+    /**
+     * interval in millis of polling for a value loaded by the lease holder
+     */
+    private long loadLeasePollMillis = 20;
+
+    public boolean isPerIdSingleFlight() {
+        return perIdSingleFlight;
+    }
+
+    public void setPerIdSingleFlight(boolean perIdSingleFlight) {
+        this.perIdSingleFlight = perIdSingleFlight;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getNullTtlMillis() {
+        return nullTtlMillis;
+    }
+
+    public void setNullTtlMillis(long nullTtlMillis) {
+        this.nullTtlMillis = nullTtlMillis;
+    }
+
+    public double getTtlJitter() {
+        return ttlJitter;
+    }
+
+    public void setTtlJitter(double ttlJitter) {
+        this.ttlJitter = ttlJitter;
+    }
+
+    public int getRefreshAllChunkSize() {
+        return refreshAllChunkSize;
+    }
+
+    public void setRefreshAllChunkSize(int refreshAllChunkSize) {
+        this.refreshAllChunkSize = refreshAllChunkSize;
+    }
+
+    public int getRefreshAllParallelism() {
+        return refreshAllParallelism;
+    }
+
+    public void setRefreshAllParallelism(int refreshAllParallelism) {
+        this.refreshAllParallelism = refreshAllParallelism;
+    }
+
+    public double getRefreshAllRateLimit() {
+        return refreshAllRateLimit;
+    }
+
+    public void setRefreshAllRateLimit(double refreshAllRateLimit) {
+        this.refreshAllRateLimit = refreshAllRateLimit;
+    }
+
+    public int getRefreshUpdatedChunkSize() {
+        return refreshUpdatedChunkSize;
+    }
+
+    public void setRefreshUpdatedChunkSize(int refreshUpdatedChunkSize) {
+        this.refreshUpdatedChunkSize = refreshUpdatedChunkSize;
+    }
+
+    public long getRefreshUpdatedWindowMillis() {
+        return refreshUpdatedWindowMillis;
+    }
+
+    public void setRefreshUpdatedWindowMillis(long refreshUpdatedWindowMillis) {
+        this.refreshUpdatedWindowMillis = refreshUpdatedWindowMillis;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public double getRefreshAheadBeta() {
+        return refreshAheadBeta;
+    }
+
+    public void setRefreshAheadBeta(double refreshAheadBeta) {
+        this.refreshAheadBeta = refreshAheadBeta;
+    }
+
+    @Nullable
+    public Executor getRefreshAheadExecutor() {
+        return refreshAheadExecutor;
+    }
+
+    public void setRefreshAheadExecutor(@Nullable Executor refreshAheadExecutor) {
+        this.refreshAheadExecutor = refreshAheadExecutor;
+    }
+
+    public long getStaleWhileRevalidateMillis() {
+        return staleWhileRevalidateMillis;
+    }
+
+    public void setStaleWhileRevalidateMillis(long staleWhileRevalidateMillis) {
+        this.staleWhileRevalidateMillis = staleWhileRevalidateMillis;
+    }
+
+    public int getHotKeyTopN() {
+        return hotKeyTopN;
+    }
+
+    public void setHotKeyTopN(int hotKeyTopN) {
+        this.hotKeyTopN = hotKeyTopN;
+    }
+
+    public long getHotKeyRevalidateMillis() {
+        return hotKeyRevalidateMillis;
+    }
+
+    public void setHotKeyRevalidateMillis(long hotKeyRevalidateMillis) {
+        this.hotKeyRevalidateMillis = hotKeyRevalidateMillis;
+    }
+
+    @Nullable
+    public ExistenceFilter<?> getExistenceFilter() {
+        return existenceFilter;
+    }
+
+    public void setExistenceFilter(@Nullable ExistenceFilter<?> existenceFilter) {
+        this.existenceFilter = existenceFilter;
+    }
+
+    public int getLoadChunkSize() {
+        return loadChunkSize;
+    }
+
+    public void setLoadChunkSize(int loadChunkSize) {
+        this.loadChunkSize = loadChunkSize;
+    }
+
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    public void setLoadParallelism(int loadParallelism) {
+        this.loadParallelism = loadParallelism;
+    }
+
+    public long getLoadChunkTargetMillis() {
+        return loadChunkTargetMillis;
+    }
+
+    public void setLoadChunkTargetMillis(long loadChunkTargetMillis) {
+        this.loadChunkTargetMillis = loadChunkTargetMillis;
+    }
+
+    @Nullable
+    public Executor getLoadExecutor() {
+        return loadExecutor;
+    }
+
+    public void setLoadExecutor(@Nullable Executor loadExecutor) {
+        this.loadExecutor = loadExecutor;
+    }
+
+    public int getDegradedLoadConcurrency() {
+        return degradedLoadConcurrency;
+    }
+
+    public void setDegradedLoadConcurrency(int degradedLoadConcurrency) {
+        this.degradedLoadConcurrency = degradedLoadConcurrency;
+    }
+
+    public long getLoadLeaseMillis() {
+        return loadLeaseMillis;
+    }
+
+    public void setLoadLeaseMillis(long loadLeaseMillis) {
+        this.loadLeaseMillis = loadLeaseMillis;
+    }
+
+    public long getLoadLeasePollMillis() {
+        return loadLeasePollMillis;
+    }
+
+    public void setLoadLeasePollMillis(long loadLeasePollMillis) {
+        this.loadLeasePollMillis = loadLeasePollMillis;
+    }
+}
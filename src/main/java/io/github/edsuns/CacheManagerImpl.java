@@ -1,11 +1,20 @@
 package io.github.edsuns;
 
+import io.github.edsuns.bloom.ExistenceFilter;
+import io.github.edsuns.hot.HotKeys;
+import io.github.edsuns.metrics.CacheMetrics;
+import io.github.edsuns.metrics.Stage;
+import io.github.edsuns.util.BatchSingleFlight;
+import io.github.edsuns.util.ChunkedLoader;
+import io.github.edsuns.util.NamedThreadFactory;
+import io.github.edsuns.util.RateLimiter;
 import io.github.edsuns.util.SimpleCacheValue;
 import io.github.edsuns.util.SingleFlight;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -19,6 +28,28 @@ public class CacheManagerImpl<X, ID> implements CacheManager<X, ID> {
     protected final Database<X, ID> database;
     protected final Function<X, ID> idGetter;
     protected final SingleFlight<Collection<ID>> single;
+    @Nullable
+    protected final BatchSingleFlight<ID, X> perIdSingle;
+    protected final CacheManagerConfig config;
+    protected final TimeToLive ttl;
+    protected final CacheMetrics metrics;
+    @Nullable
+    protected final HotKeys<ID> hotKeys;
+    @Nullable
+    protected final ExistenceFilter<ID> existenceFilter;
+    @Nullable
+    protected final ChunkedLoader chunkedLoader;
+    @Nullable
+    private final Executor refreshAheadExecutor;
+    @Nullable
+    private final Semaphore degradedLoads;
+    private final Set<ID> refreshingAhead = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private volatile String keyPrefix;
+    /**
+     * moving average of the database load latency
+     */
+    private volatile long loadCostNanos;
 
     public CacheManagerImpl(CacheStorage cacheStorage, Database<X, ID> database, Function<X, ID> idGetter) {
         this(cacheStorage, database, idGetter, new SingleFlight<>());
@@ -26,17 +57,217 @@ public class CacheManagerImpl<X, ID> implements CacheManager<X, ID> {
 
     public CacheManagerImpl(CacheStorage cacheStorage, Database<X, ID> database,
                             Function<X, ID> idGetter, SingleFlight<Collection<ID>> single) {
+        this(cacheStorage, database, idGetter, single, new CacheManagerConfig());
+    }
+
+    public CacheManagerImpl(CacheStorage cacheStorage, Database<X, ID> database,
+                            Function<X, ID> idGetter, CacheManagerConfig config) {
+        this(cacheStorage, database, idGetter, new SingleFlight<>(database.getEntityName(), config.getMetrics()), config);
+    }
+
+    public CacheManagerImpl(CacheStorage cacheStorage, Database<X, ID> database,
+                            Function<X, ID> idGetter, SingleFlight<Collection<ID>> single,
+                            CacheManagerConfig config) {
         this.cacheStorage = cacheStorage;
         this.database = database;
         this.idGetter = idGetter;
         this.single = single;
+        this.perIdSingle = config.isPerIdSingleFlight()
+                ? new BatchSingleFlight<>(database.getEntityName(), config.getMetrics()) : null;
+        this.config = config;
+        this.ttl = new TimeToLive(config.getTtlMillis(), config.getNullTtlMillis(), config.getTtlJitter());
+        this.metrics = config.getMetrics();
+        this.hotKeys = config.getHotKeyTopN() > 0
+                ? new HotKeys<>(config.getHotKeyTopN(), config.getHotKeyRevalidateMillis()) : null;
+        @SuppressWarnings("unchecked")
+        ExistenceFilter<ID> existenceFilter = (ExistenceFilter<ID>) config.getExistenceFilter();
+        this.existenceFilter = existenceFilter;
+        this.chunkedLoader = config.getLoadChunkSize() <= 0 ? null : new ChunkedLoader(config.getLoadChunkSize(),
+                config.getLoadParallelism(), config.getLoadChunkTargetMillis(), config.getLoadExecutor());
+        this.refreshAheadExecutor = config.getRefreshAheadBeta() <= 0 && config.getStaleWhileRevalidateMillis() <= 0 ? null
+                : Optional.ofNullable(config.getRefreshAheadExecutor()).orElseGet(() -> new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024),
+                new NamedThreadFactory("cashe-refresh-ahead")));
+        this.degradedLoads = config.getDegradedLoadConcurrency() <= 0 ? null
+                : new Semaphore(config.getDegradedLoadConcurrency());
     }
 
     @Override
     public List<X> getByIds(Collection<ID> ids) {
-        Map<ID, CacheValue> cacheMap = getIdValueMap(ids);
+        long start = System.nanoTime();
+        Collection<ID> existingIds = filterAbsent(ids);
         Map<ID, X> result = new HashMap<>((int) (ids.size() / .75 + 1));
+        Map<ID, CacheValue> unCached;
+        try {
+            Map<ID, CacheValue> cacheMap = hotKeys == null
+                    ? getIdValueMap(existingIds) : hotKeys.get(existingIds, this::getIdValueMap, this::getVersionMap);
+            unCached = collectCached(existingIds, cacheMap, result);
+            if (unCached != null && config.getLoadLeaseMillis() > 0) {
+                unCached = awaitLeased(unCached, result);
+            }
+        } catch (CacheUnavailableException e) {
+            List<X> list = loadDegraded(ids, existingIds, e);
+            metrics.recordStage(database.getEntityName(), Stage.GET_BY_IDS, System.nanoTime() - start, ids.size());
+            return list;
+        }
+        if (unCached != null) {
+            final Set<ID> unCachedIds = unCached.keySet();
+            try {
+                List<X> data;
+                try {
+                    data = load(unCachedIds);
+                } catch (PartialLoadException e) {
+                    putPartial(unCached, e);
+                    throw e;
+                }
+                // un-cached id that has no data will be cached by a null value
+                putCache(values(unCached, data));
+                data.forEach(x -> result.put(idGetter.apply(x), x));
+            } finally {
+                if (config.getLoadLeaseMillis() > 0) {
+                    releaseLeases(unCached);
+                }
+            }
+        }
+        List<X> list = ids.stream().map(result::get).collect(Collectors.toList());
+        metrics.recordStage(database.getEntityName(), Stage.GET_BY_IDS, System.nanoTime() - start, ids.size());
+        return list;
+    }
+
+    /**
+     * Polls for the values that the lease holders of other callers are loading, until they are filled,
+     * or their leases expire and are taken by the poll.
+     *
+     * @param unCached un-cached id to its {@link CacheValue}
+     * @return the un-cached ids left to load by this caller, with the leases it took, null if none
+     * @throws CacheUnavailableException if a poll fails, the leases taken are released first
+     */
+    @Nullable
+    protected Map<ID, CacheValue> awaitLeased(Map<ID, CacheValue> unCached, Map<ID, X> result) {
+        Map<ID, CacheValue> leased = new HashMap<>();
+        List<ID> loading = new ArrayList<>();
+        unCached.forEach((id, cache) -> {
+            if (cache != null && cache.isLoading()) {
+                loading.add(id);
+            } else {
+                leased.put(id, cache);
+            }
+        });
+        // a lease is not renewed, so waiting longer than two leases means the storage doesn't expire them
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getLoadLeaseMillis() * 2);
+        while (!loading.isEmpty()) {
+            if (System.nanoTime() - deadline > 0 || !sleep(config.getLoadLeasePollMillis())) {
+                loading.forEach(id -> leased.put(id, null));
+                break;
+            }
+            List<CacheValue> values;
+            try {
+                values = cacheStorage.getAndLease(composeKey(loading), config.getLoadLeaseMillis(), false);
+            } catch (CacheUnavailableException e) {
+                releaseLeases(leased);
+                throw e;
+            }
+            Map<ID, CacheValue> polled = toIdValueMap(loading, values);
+            loading.clear();
+            polled.forEach((id, cache) -> {
+                if (cache != null && !cache.isNullCache()) {
+                    @SuppressWarnings("unchecked")
+                    X x = (X) cache.getValue();
+                    result.put(id, x);
+                } else if (cache != null && cache.isLoading()) {
+                    loading.add(id);
+                } else {
+                    leased.put(id, cache);
+                }
+            });
+        }
+        return leased.isEmpty() ? null : leased;
+    }
+
+    /**
+     * Releases the leases taken by this caller, the ids it gave up waiting for hold none.
+     */
+    private void releaseLeases(Map<ID, CacheValue> leased) {
+        Map<String, String> leases = new HashMap<>();
+        leased.forEach((id, cache) -> {
+            String token = cache == null ? null : cache.getLeaseToken();
+            if (token != null) {
+                leases.put(composeKey(id), token);
+            }
+        });
+        if (!leases.isEmpty()) {
+            cacheStorage.releaseLeases(leases);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Loads from the database while the storage is unavailable, the loaded values are not put.
+     *
+     * @throws CacheUnavailableException if the degraded loads are at their limit
+     */
+    protected List<X> loadDegraded(Collection<ID> ids, Collection<ID> existingIds, CacheUnavailableException e) {
+        if (degradedLoads != null && !degradedLoads.tryAcquire()) {
+            // protect the database
+            throw e;
+        }
+        try {
+            metrics.recordGets(database.getEntityName(), 0, 0, existingIds.size());
+            Map<ID, X> loaded = existingIds.isEmpty()
+                    ? Collections.emptyMap() : toMap(load(new LinkedHashSet<>(existingIds)));
+            List<X> list = new ArrayList<>(ids.size());
+            for (ID id : ids) {
+                list.add(loaded.get(id));
+            }
+            return list;
+        } finally {
+            if (degradedLoads != null) {
+                degradedLoads.release();
+            }
+        }
+    }
+
+    /**
+     * @return the ids except the ones that definitely don't exist
+     */
+    protected Collection<ID> filterAbsent(Collection<ID> ids) {
+        if (existenceFilter == null || ids.isEmpty()) {
+            return ids;
+        }
+        Set<ID> absent = existenceFilter.absent(ids);
+        if (absent.isEmpty()) {
+            return ids;
+        }
+        // answered as null without a null cache
+        metrics.recordGets(database.getEntityName(), 0, absent.size(), 0);
+        List<ID> existingIds = new ArrayList<>(ids.size() - absent.size());
+        for (ID id : ids) {
+            if (!absent.contains(id)) {
+                existingIds.add(id);
+            }
+        }
+        return existingIds;
+    }
+
+    /**
+     * Puts the cached values into result.
+     *
+     * @return map un-cached id to its {@link CacheValue}, null if all ids are cached
+     */
+    @Nullable
+    protected Map<ID, CacheValue> collectCached(Collection<ID> ids, Map<ID, CacheValue> cacheMap, Map<ID, X> result) {
         Map<ID, CacheValue> unCached = null;
+        List<ID> refreshAhead = null;
+        int nullHits = 0;
         for (ID id : ids) {
             @Nullable
             CacheValue cache = cacheMap.get(id);
@@ -45,6 +276,15 @@ public class CacheManagerImpl<X, ID> implements CacheManager<X, ID> {
                 @SuppressWarnings("unchecked")
                 X x = (X) cache.getValue();
                 result.put(id, x);
+                if (x == null) {
+                    nullHits++;
+                }
+                if (shouldRefreshAhead(cache)) {
+                    if (refreshAhead == null) {
+                        refreshAhead = new ArrayList<>();
+                    }
+                    refreshAhead.add(id);
+                }
             } else {
                 if (unCached == null) {
                     unCached = new HashMap<>();
@@ -52,69 +292,470 @@ public class CacheManagerImpl<X, ID> implements CacheManager<X, ID> {
                 unCached.put(id, cache);
             }
         }
-        if (unCached != null && !unCached.isEmpty()) {
-            final Set<ID> unCachedIds = unCached.keySet();
-            List<X> data = single.call(unCachedIds, () -> database.load(unCachedIds));
-            // un-cached id that has no data will be cached by a null value
-            cacheStorage.put(values(unCached, data));
-            data.forEach(x -> result.put(idGetter.apply(x), x));
+        int misses = unCached == null ? 0 : unCached.size();
+        metrics.recordGets(database.getEntityName(), ids.size() - misses - nullHits, nullHits, misses);
+        if (refreshAhead != null) {
+            refreshAhead(refreshAhead);
+        }
+        return unCached;
+    }
+
+    /**
+     * Only refresh-ahead needs the remaining ttls, a stale value is marked by its version.
+     */
+    protected boolean isTtlRead() {
+        return config.getRefreshAheadBeta() > 0;
+    }
+
+    /**
+     * A stale value is always refreshed.
+     * XFetch: the closer to expiry and the costlier to load, the more likely a read refreshes the value early.
+     */
+    protected boolean shouldRefreshAhead(CacheValue cache) {
+        if (refreshAheadExecutor == null) {
+            return false;
+        }
+        if (cache.isStale()) {
+            return true;
+        }
+        long ttlMillis = cache.getTtlMillis();
+        if (config.getRefreshAheadBeta() <= 0 || ttlMillis < 0) {
+            return false;
+        }
+        double costMillis = loadCostNanos / 1e6;
+        return -costMillis * config.getRefreshAheadBeta() * Math.log(ThreadLocalRandom.current().nextDouble()) >= ttlMillis;
+    }
+
+    /**
+     * Refreshes the ids in background through the versioned CAS put, the readers keep getting the current values.
+     */
+    protected void refreshAhead(List<ID> ids) {
+        List<ID> owned = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            // one refresh per id at a time on this instance
+            if (refreshingAhead.add(id)) {
+                owned.add(id);
+            }
+        }
+        if (owned.isEmpty()) {
+            return;
+        }
+        try {
+            Objects.requireNonNull(refreshAheadExecutor).execute(() -> {
+                try {
+                    refresh(owned);
+                } finally {
+                    owned.forEach(refreshingAhead::remove);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the value is still served, a later read tries again
+            owned.forEach(refreshingAhead::remove);
         }
-        return ids.stream().map(result::get).collect(Collectors.toList());
     }
 
     @Override
     public void updateByIds(Collection<X> entities) {
-        Map<ID, CacheValue> versionMap = getIdValueMap(entities.stream().map(idGetter).collect(Collectors.toList()));
+        long start = System.nanoTime();
+        List<ID> ids = entities.stream().map(idGetter).collect(Collectors.toList());
+        Map<ID, Integer> versionMap = getVersionMap(ids);
+        updateDatabase(ids, entities);
+        invalidateCache(putCache(versionedValues(versionMap, entities)));
+        invalidateHotKeys(ids);
+        metrics.recordStage(database.getEntityName(), Stage.UPDATE_BY_IDS, System.nanoTime() - start, entities.size());
+    }
+
+    protected void updateDatabase(Collection<ID> ids, Collection<X> entities) {
+        if (existenceFilter != null) {
+            // before the rows are visible, a false positive is harmless but a false negative is not
+            existenceFilter.put(ids);
+        }
+        long start = System.nanoTime();
         database.update(entities);
-        cacheStorage.delete(cacheStorage.put(values(versionMap, entities)));
+        metrics.recordStage(database.getEntityName(), Stage.DATABASE_UPDATE, System.nanoTime() - start, entities.size());
+        if (existenceFilter != null) {
+            // again for a rebuild that scanned past the rows before they were visible
+            existenceFilter.put(ids);
+        }
     }
 
     @Override
     public void setNulls(Collection<ID> ids) {
-        Map<ID, CacheValue> versionMap = getIdValueMap(ids);
-        cacheStorage.delete(cacheStorage.put(values(versionMap, Collections.emptyList())));
+        long start = System.nanoTime();
+        Map<ID, Integer> versionMap = getVersionMap(ids);
+        invalidateCache(putCache(versionedValues(versionMap, Collections.emptyList())));
+        invalidateHotKeys(ids);
+        metrics.recordStage(database.getEntityName(), Stage.SET_NULLS, System.nanoTime() - start, ids.size());
     }
 
     @Override
     public void delete(Collection<ID> ids) {
         cacheStorage.delete(composeKey(ids));
+        invalidateHotKeys(ids);
     }
 
     @Override
     public void scheduledRefreshUpdated() {
+        long startNanos = System.nanoTime();
         String millisKey = getInvalidateUpdatedKey();
         long lastInvalidatedAt = cacheStorage.getTimestampMillis(millisKey);
         long now = System.currentTimeMillis();
-        List<ID> ids = database.getIdsByUpdatedBetween(lastInvalidatedAt, now);
-        // begin CAS scope
-        Map<ID, CacheValue> versionMap = getIdValueMap(ids);
-        List<X> data = database.load(ids);
-        cacheStorage.delete(cacheStorage.put(values(versionMap, data)));
-        cacheStorage.saveTimestampMillis(millisKey, now);
+        if (config.getRefreshUpdatedChunkSize() <= 0) {
+            List<ID> ids = database.getIdsByUpdatedBetween(lastInvalidatedAt, now);
+            refresh(ids);
+            cacheStorage.saveTimestampMillis(millisKey, now);
+            metrics.recordStage(database.getEntityName(), Stage.REFRESH_UPDATED, System.nanoTime() - startNanos, ids.size());
+            return;
+        }
+        long window = config.getRefreshUpdatedWindowMillis();
+        int refreshed = 0;
+        ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("cashe-refresh-updated"));
+        try {
+            // the watermark advances per time window
+            for (long start = lastInvalidatedAt; start < now; ) {
+                long end = window > 0 && start > 0 ? Math.min(start + window, now) : now;
+                List<ID> ids = database.getIdsByUpdatedBetween(start, end);
+                refreshPipelined(ids, executor);
+                cacheStorage.saveTimestampMillis(millisKey, end);
+                refreshed += ids.size();
+                start = end;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        metrics.recordStage(database.getEntityName(), Stage.REFRESH_UPDATED, System.nanoTime() - startNanos, refreshed);
     }
 
+    /**
+     * Refreshes ids chunk by chunk, the versions of a chunk are read
+     * while the previous chunk is loading from database and putting.
+     */
+    private void refreshPipelined(List<ID> ids, ExecutorService executor) {
+        int chunkSize = config.getRefreshUpdatedChunkSize();
+        Future<?> previous = null;
+        try {
+            for (int i = 0; i < ids.size(); i += chunkSize) {
+                List<ID> chunk = ids.subList(i, Math.min(ids.size(), i + chunkSize));
+                // begin CAS scope
+                Map<ID, Integer> versionMap = getVersionMap(chunk);
+                if (previous != null) {
+                    previous.get();
+                }
+                previous = executor.submit(() -> {
+                    List<X> data = loadDatabase(chunk);
+                    putExisting(data);
+                    invalidateCache(putCache(versionedValues(versionMap, data)));
+                    invalidateHotKeys(chunk);
+                });
+            }
+            if (previous != null) {
+                previous.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (previous != null) {
+                previous.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Scans all ids by {@link Database#scanIds(String, int)} and refreshes them chunk by chunk,
+     * so the memory stays flat regardless of the table size.
+     * The cursor of the last contiguous refreshed page is saved as the checkpoint,
+     * an interrupted scan resumes from it. A page larger than the chunk size is refreshed by several chunks.
+     */
     @Override
     public void scheduledRefreshAll() {
-        // TODO
-        throw new UnsupportedOperationException("TODO");
+        long start = System.nanoTime();
+        int refreshed = 0;
+        String checkpointKey = getRefreshAllKey();
+        int chunkSize = config.getRefreshAllChunkSize();
+        int parallelism = config.getRefreshAllParallelism();
+        RateLimiter rateLimiter = new RateLimiter(config.getRefreshAllRateLimit());
+        Semaphore permits = new Semaphore(parallelism);
+        ScanProgress progress = new ScanProgress(checkpointKey);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("cashe-refresh-all"));
+        try {
+            String cursor = cacheStorage.getCheckpoint(checkpointKey);
+            do {
+                Page<ID> page = database.scanIds(cursor, chunkSize);
+                cursor = page.getNextCursor();
+                List<ID> pageIds = page.getIds();
+                refreshed += pageIds.size();
+                for (int from = 0; from == 0 || from < pageIds.size(); from += chunkSize) {
+                    List<ID> ids = pageIds.subList(from, Math.min(pageIds.size(), from + chunkSize));
+                    rateLimiter.acquire(ids.size());
+                    permits.acquire();
+                    progress.check();
+                    // the last chunk of a page moves the checkpoint
+                    ScanProgress.Chunk chunk = progress.begin(from + chunkSize >= pageIds.size() ? cursor : null);
+                    executor.execute(() -> {
+                        try {
+                            refresh(ids);
+                            progress.complete(chunk, null);
+                        } catch (Throwable e) {
+                            progress.complete(chunk, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            } while (cursor != null);
+            permits.acquire(parallelism);
+            progress.check();
+            // the scan is done, the next one starts over
+            cacheStorage.saveCheckpoint(checkpointKey, null);
+            metrics.recordStage(database.getEntityName(), Stage.REFRESH_ALL, System.nanoTime() - start, refreshed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Map<ID, Integer> getHotIds() {
+        return hotKeys == null ? Collections.emptyMap() : hotKeys.hotIds();
+    }
+
+    private void refresh(Collection<ID> ids) {
+        refresh(ids, ids);
     }
 
-    private Map<String, CacheValue> values(Map<ID, CacheValue> before, Collection<X> after) {
-        Map<ID, X> afterMap = after.stream().collect(Collectors.toMap(idGetter, Function.identity(), (a, b) -> b));
-        Map<String, CacheValue> result = new HashMap<>((int) (after.size() / .75 + 1));
-        for (Map.Entry<ID, CacheValue> entry : before.entrySet()) {
+    /**
+     * Puts the values of ids loaded from the database, the ids that are not loaded are cached by null values.
+     *
+     * @param loadIds the ids to load, a subset of ids
+     */
+    protected void refresh(Collection<ID> ids, Collection<ID> loadIds) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // begin CAS scope
+        Map<ID, Integer> versionMap = getVersionMap(ids);
+        List<X> data = loadIds.isEmpty() ? Collections.emptyList() : loadDatabase(loadIds);
+        putExisting(data);
+        invalidateCache(putCache(versionedValues(versionMap, data)));
+        invalidateHotKeys(ids);
+    }
+
+    /**
+     * The refreshes see the rows inserted by others.
+     */
+    private void putExisting(List<X> data) {
+        if (existenceFilter != null && !data.isEmpty()) {
+            existenceFilter.put(data.stream().map(idGetter).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Rebuilds the existence filter from all ids scanned by {@link Database#scanIds(String, int)},
+     * so the deleted ids are dropped. The ids put meanwhile go to the rebuild too.
+     */
+    public void rebuildExistenceFilter() {
+        if (existenceFilter == null) {
+            return;
+        }
+        ExistenceFilter.Builder<ID> builder = existenceFilter.rebuild();
+        String cursor = null;
+        do {
+            Page<ID> page = database.scanIds(cursor, config.getRefreshAllChunkSize());
+            builder.put(page.getIds());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        builder.commit();
+    }
+
+    protected void invalidateHotKeys(Collection<ID> ids) {
+        if (hotKeys != null) {
+            hotKeys.invalidate(ids);
+        }
+    }
+
+    /**
+     * @throws PartialLoadException if some chunks failed, it carries only the entities loaded for this caller
+     */
+    protected List<X> load(Set<ID> ids) {
+        if (perIdSingle == null) {
+            return single.call(ids, () -> loadDatabase(ids));
+        }
+        Set<ID> ownedIds = new HashSet<>();
+        List<X> ownedData = new ArrayList<>();
+        PartialLoadException[] ownedFailure = new PartialLoadException[1];
+        Map<ID, X> loaded;
+        try {
+            loaded = perIdSingle.call(ids, owned -> {
+                try {
+                    Map<ID, X> map = loadAsMap(owned);
+                    ownedIds.addAll(owned);
+                    ownedData.addAll(map.values());
+                    return map;
+                } catch (PartialLoadException e) {
+                    ownedFailure[0] = e;
+                    throw e;
+                }
+            });
+        } catch (PartialLoadException e) {
+            if (e == ownedFailure[0]) {
+                throw e;
+            }
+            // thrown by the flight of another caller, whose loaded and failed ids don't cover the ids of this one
+            List<ID> failedIds = new ArrayList<>(ids.size() - ownedIds.size());
+            for (ID id : ids) {
+                if (!ownedIds.contains(id)) {
+                    failedIds.add(id);
+                }
+            }
+            throw new PartialLoadException(ownedData, failedIds, e);
+        }
+        List<X> data = new ArrayList<>(loaded.size());
+        for (X x : loaded.values()) {
+            if (x != null) {
+                data.add(x);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Caches the entities loaded before a {@link PartialLoadException}, so a retry only loads the rest.
+     * No id is cached by a null value, since an id without an entity may be absent or just not loaded.
+     */
+    protected void putPartial(Map<ID, CacheValue> unCached, PartialLoadException e) {
+        Map<String, CacheValue> values = partialValues(unCached, e);
+        if (!values.isEmpty()) {
+            putCache(values);
+        }
+    }
+
+    /**
+     * @return the values of the entities loaded before a {@link PartialLoadException}
+     * @see #putPartial(Map, PartialLoadException)
+     */
+    protected Map<String, CacheValue> partialValues(Map<ID, CacheValue> unCached, PartialLoadException e) {
+        @SuppressWarnings("unchecked")
+        List<X> loaded = (List<X>) e.getLoaded();
+        Map<ID, CacheValue> loadedIds = new HashMap<>((int) (loaded.size() / .75 + 1));
+        for (X x : loaded) {
+            ID id = idGetter.apply(x);
+            if (unCached.containsKey(id)) {
+                loadedIds.put(id, unCached.get(id));
+            }
+        }
+        return loadedIds.isEmpty() ? Collections.emptyMap() : values(loadedIds, loaded);
+    }
+
+    private Map<ID, X> loadAsMap(Collection<ID> ids) {
+        return toMap(loadDatabase(ids));
+    }
+
+    protected List<X> loadDatabase(Collection<ID> ids) {
+        long start = System.nanoTime();
+        List<X> data = chunkedLoader == null ? database.load(ids) : chunkedLoader.load(ids, database::load);
+        long nanos = System.nanoTime() - start;
+        metrics.recordStage(database.getEntityName(), Stage.DATABASE_LOAD, nanos, ids.size());
+        long cost = loadCostNanos;
+        // racy updates only lose samples
+        loadCostNanos = cost == 0 ? nanos : cost + (nanos - cost) / 8;
+        return data;
+    }
+
+    /**
+     * @return keys failed by the versioned CAS
+     */
+    protected List<String> putCache(Map<String, CacheValue> values) {
+        long start = System.nanoTime();
+        List<String> failedKeys = cacheStorage.put(values, ttl);
+        metrics.recordStage(database.getEntityName(), Stage.CACHE_PUT, System.nanoTime() - start, values.size());
+        if (!failedKeys.isEmpty()) {
+            metrics.recordConflicts(database.getEntityName(), failedKeys.size());
+        }
+        return failedKeys;
+    }
+
+    /**
+     * Drops the keys failed by the versioned CAS, marks them stale in stale-while-revalidate mode.
+     */
+    protected void invalidateCache(List<String> keys) {
+        long maxStaleMillis = config.getStaleWhileRevalidateMillis();
+        if (maxStaleMillis <= 0) {
+            deleteCache(keys);
+            return;
+        }
+        long start = System.nanoTime();
+        cacheStorage.markStale(keys, maxStaleMillis);
+        metrics.recordStage(database.getEntityName(), Stage.CACHE_MARK_STALE, System.nanoTime() - start, keys.size());
+    }
+
+    protected void deleteCache(List<String> keys) {
+        long start = System.nanoTime();
+        cacheStorage.delete(keys);
+        metrics.recordStage(database.getEntityName(), Stage.CACHE_DELETE, System.nanoTime() - start, keys.size());
+    }
+
+    protected Map<ID, X> toMap(Collection<X> data) {
+        return data.stream().collect(Collectors.toMap(idGetter, Function.identity(), (a, b) -> b));
+    }
+
+    protected Map<String, CacheValue> values(Map<ID, CacheValue> before, Collection<X> after) {
+        Map<ID, Integer> versions = new HashMap<>((int) (before.size() / .75 + 1));
+        before.forEach((id, cache) -> versions.put(id, cache == null ? null : cache.getVersion()));
+        return versionedValues(versions, after);
+    }
+
+    /**
+     * @param versions id to the version to CAS by, null for initial
+     */
+    protected Map<String, CacheValue> versionedValues(Map<ID, Integer> versions, Collection<X> after) {
+        Map<ID, X> afterMap = toMap(after);
+        Map<String, CacheValue> result = new HashMap<>((int) (versions.size() / .75 + 1));
+        for (Map.Entry<ID, Integer> entry : versions.entrySet()) {
             ID id = entry.getKey();
-            String key = composeKey(id);
             X value = afterMap.get(id);// nullable
-            result.put(key, new SimpleCacheValue(
-                    Optional.ofNullable(entry.getValue()).map(CacheValue::getVersion).orElse(null),// initial null
-                    value));
+            result.put(composeKey(id), new SimpleCacheValue(entry.getValue(), value));
         }
         return result;
     }
 
     private Map<ID, CacheValue> getIdValueMap(Collection<ID> ids) {
-        Iterator<CacheValue> it = cacheStorage.get(composeKey(ids)).iterator();
+        long start = System.nanoTime();
+        List<CacheValue> values = config.getLoadLeaseMillis() > 0
+                ? cacheStorage.getAndLease(composeKey(ids), config.getLoadLeaseMillis(), isTtlRead())
+                : cacheStorage.get(composeKey(ids), isTtlRead());
+        metrics.recordStage(database.getEntityName(), Stage.CACHE_GET, System.nanoTime() - start, ids.size());
+        return toIdValueMap(ids, values);
+    }
+
+    /**
+     * Begins the CAS scope of a write, the cached values are not read.
+     */
+    protected Map<ID, Integer> getVersionMap(Collection<ID> ids) {
+        long start = System.nanoTime();
+        List<Integer> versions = cacheStorage.getVersions(composeKey(ids));
+        metrics.recordStage(database.getEntityName(), Stage.CACHE_GET_VERSIONS, System.nanoTime() - start, ids.size());
+        return toIdVersionMap(ids, versions);
+    }
+
+    protected Map<ID, Integer> toIdVersionMap(Collection<ID> ids, List<Integer> versions) {
+        Iterator<Integer> it = versions.iterator();
+        Map<ID, Integer> versionMap = new HashMap<>((int) (ids.size() / .75 + 1));
+        for (ID id : ids) {
+            versionMap.put(id, it.hasNext() ? it.next() : null);
+        }
+        return versionMap;
+    }
+
+    protected Map<ID, CacheValue> toIdValueMap(Collection<ID> ids, List<CacheValue> values) {
+        Iterator<CacheValue> it = values.iterator();
         Map<ID, CacheValue> cacheMap = new HashMap<>();
         for (ID id : ids) {
             cacheMap.put(id, it.hasNext() ? it.next() : null);
@@ -122,20 +763,104 @@ public class CacheManagerImpl<X, ID> implements CacheManager<X, ID> {
         return cacheMap;
     }
 
+    protected String getRefreshAllKey() {
+        return getCacheKeyPrefix() + ":" + database.getEntityName() + ":_cursor_";
+    }
+
     protected String getInvalidateUpdatedKey() {
         return getCacheKeyPrefix() + ":" + database.getEntityName() + ":_millis_";
     }
 
     protected List<String> composeKey(Collection<ID> ids) {
-        return ids.stream().map(this::composeKey).collect(Collectors.toList());
+        List<String> keys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            keys.add(composeKey(id));
+        }
+        return keys;
     }
 
     protected String composeKey(ID id) {
-        return getCacheKeyPrefix() + ":" + database.getEntityName() + ":" + id;
+        return getKeyPrefix() + id;
+    }
+
+    /**
+     * @return the prefix of the key of an id, composed once
+     */
+    protected String getKeyPrefix() {
+        String prefix = keyPrefix;
+        if (prefix == null) {
+            keyPrefix = prefix = getCacheKeyPrefix() + ":" + database.getEntityName() + ":";
+        }
+        return prefix;
     }
 
     protected String getCacheKeyPrefix() {
         return "cashe";
     }
 
+    /**
+     * Tracks the chunks of a scan in order, the checkpoint only advances over contiguous completed chunks.
+     */
+    private class ScanProgress {
+        private final String checkpointKey;
+        private final Deque<Chunk> chunks = new ArrayDeque<>();
+        @Nullable
+        private Throwable failure;
+
+        ScanProgress(String checkpointKey) {
+            this.checkpointKey = checkpointKey;
+        }
+
+        synchronized Chunk begin(@Nullable String cursor) {
+            Chunk chunk = new Chunk(cursor);
+            chunks.add(chunk);
+            return chunk;
+        }
+
+        synchronized void complete(Chunk chunk, @Nullable Throwable e) {
+            if (e != null) {
+                if (failure == null) {
+                    failure = e;
+                }
+                return;
+            }
+            chunk.done = true;
+            String checkpoint = null;
+            while (!chunks.isEmpty() && chunks.peek().done) {
+                String cursor = chunks.poll().cursor;
+                // the last chunk of the scan has none, the checkpoint is cleared once the whole scan is done
+                if (cursor != null) {
+                    checkpoint = cursor;
+                }
+            }
+            if (checkpoint != null) {
+                cacheStorage.saveCheckpoint(checkpointKey, checkpoint);
+            }
+        }
+
+        synchronized void check() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+
+        class Chunk {
+            /**
+             * cursor of the next page, null if the chunk doesn't move the checkpoint
+             */
+            @Nullable
+            final String cursor;
+            boolean done;
+
+            Chunk(@Nullable String cursor) {
+                this.cursor = cursor;
+            }
+        }
+    }
 }
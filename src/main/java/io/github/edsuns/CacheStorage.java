@@ -1,6 +1,8 @@
 package io.github.edsuns;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -19,15 +21,114 @@ public interface CacheStorage {
      */
     List<String> put(Map<String, CacheValue> values);
 
+    /**
+     * Same as {@link #put(Map)}, the put values expire by ttl.
+     * A storage that doesn't support expiration ignores ttl.
+     *
+     * @param values map key to {@link CacheValue}
+     * @param ttl    expiration of values and null caches
+     * @return id list that not be put because cas failed
+     */
+    default List<String> put(Map<String, CacheValue> values, TimeToLive ttl) {
+        return put(values);
+    }
+
+    /**
+     * Same as {@link #put(Map, TimeToLive)} for the values of several entities that expire differently.
+     * A storage with round trips puts them all at once.
+     *
+     * @param batches ttl to the values that expire by it
+     * @return id list that not be put because cas failed
+     */
+    default List<String> putAll(Map<TimeToLive, Map<String, CacheValue>> batches) {
+        List<String> failedKeys = new ArrayList<>();
+        batches.forEach((ttl, values) -> failedKeys.addAll(put(values, ttl)));
+        return failedKeys;
+    }
+
     /**
      * @param keys id list of queried value
      * @return list {@link CacheValue} that contains id property
      */
     List<CacheValue> get(Collection<String> keys);
 
+    /**
+     * Same as {@link #get(Collection)}, a storage that reads {@link CacheValue#getTtlMillis()} at a cost
+     * reads it only if asked, e.g. for refresh-ahead.
+     *
+     * @param withTtl whether the remaining ttls are read
+     */
+    default List<CacheValue> get(Collection<String> keys, boolean withTtl) {
+        return get(keys);
+    }
+
+    /**
+     * Same as {@link #get(Collection, boolean)}, and takes a lease on every absent value for the caller to load it,
+     * so one caller of all instances loads a value at a time. An absent value whose lease is held
+     * by another caller is {@link CacheValue#isLoading()}, and a lease taken carries the
+     * {@link CacheValue#getLeaseToken()} of the call. A storage without leases takes none.
+     *
+     * @param leaseMillis time in millis the lease expires in, unless released earlier
+     */
+    default List<CacheValue> getAndLease(Collection<String> keys, long leaseMillis, boolean withTtl) {
+        return get(keys, withTtl);
+    }
+
+    /**
+     * Releases the leases taken by {@link #getAndLease}, after the values are put or failed to load.
+     * A lease is released only while it holds the token, one expired and taken by another caller is kept.
+     *
+     * @param leases map key to the {@link CacheValue#getLeaseToken()} of its lease
+     */
+    default void releaseLeases(Map<String, String> leases) {
+    }
+
+    /**
+     * Reads the versions only, for the CAS of a write that doesn't need the cached values.
+     *
+     * @param keys id list of queried versions
+     * @return versions in the order of keys, null if no version
+     */
+    default List<Integer> getVersions(Collection<String> keys) {
+        List<CacheValue> values = get(keys);
+        List<Integer> versions = new ArrayList<>(values.size());
+        for (CacheValue value : values) {
+            versions.add(value == null ? null : value.getVersion());
+        }
+        return versions;
+    }
+
     void delete(Collection<String> keys);
 
+    /**
+     * Marks the values stale instead of deleting them, a stale value is still read with {@link CacheValue#isStale()}
+     * until it's put again or expires in maxStaleMillis. The versions change as by {@link #delete(Collection)},
+     * so the CAS of the writes begun before fails. A storage that doesn't support it deletes the values.
+     *
+     * @param maxStaleMillis max time in millis to keep serving a stale value
+     */
+    default void markStale(Collection<String> keys, long maxStaleMillis) {
+        delete(keys);
+    }
+
     void saveTimestampMillis(String key, long timeMillis);
 
     long getTimestampMillis(String key);
+
+    /**
+     * Saves the checkpoint of a scan by {@link CacheManager#scheduledRefreshAll()}.
+     * A storage without checkpoints keeps none, so an interrupted scan starts over.
+     *
+     * @param checkpoint null to remove the checkpoint
+     */
+    default void saveCheckpoint(String key, @Nullable String checkpoint) {
+    }
+
+    /**
+     * @return the saved checkpoint, null to scan from the first id
+     */
+    @Nullable
+    default String getCheckpoint(String key) {
+        return null;
+    }
 }
@@ -0,0 +1,19 @@
+package io.github.edsuns;
+
+/**
+ * Thrown by a storage read that can't answer in time, so the misses are not taken for absent values.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:10
+ */
+public class CacheUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = -3976668300473465339L;
+
+    public CacheUnavailableException(String message) {
+        super(message);
+    }
+
+    public CacheUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -18,4 +18,35 @@ public interface CacheValue extends Serializable {
     Object getValue();
 
     boolean isNullCache();
+
+    /**
+     * @return remaining time to live of the value in millis, negative if it never expires or is unknown
+     */
+    default long getTtlMillis() {
+        return -1;
+    }
+
+    /**
+     * @return true if the value is marked stale by {@link CacheStorage#markStale}, it's served while being refreshed
+     */
+    default boolean isStale() {
+        return false;
+    }
+
+    /**
+     * @return true if the value is absent and another caller holds the lease to load it,
+     * see {@link CacheStorage#getAndLease}
+     */
+    default boolean isLoading() {
+        return false;
+    }
+
+    /**
+     * @return the token of the lease taken by this read to load the absent value, null if not leased,
+     * see {@link CacheStorage#releaseLeases}
+     */
+    @Nullable
+    default String getLeaseToken() {
+        return null;
+    }
 }
@@ -0,0 +1,218 @@
+package io.github.edsuns;
+
+import io.github.edsuns.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces the cache writes of concurrent {@link #updateByIds(Collection)} and {@link #setNulls(Collection)}
+ * calls, so a burst of writes to the same ids costs one versioned read and one CAS put per window
+ * instead of three round trips per call.
+ * <p>
+ * The database is still written by every call. The cache writes of a window are merged per id, and flushed
+ * when the window elapses since the first write, or as soon as it holds the max batch size of ids.
+ * A flush loads the updated ids from the database within its CAS scope, since the order of the calls
+ * is not the order their rows were committed in, and caches the ids only set null by null values.
+ * The futures of the calls complete when their window is flushed.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:50
+ */
+@ParametersAreNonnullByDefault
+public class CoalescingCacheManager<X, ID> implements CacheManager<X, ID>, AutoCloseable {
+    private final CacheManagerImpl<X, ID> delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final boolean ownsExecutors;
+
+    private final Object lock = new Object();
+    private Window<ID> pending = new Window<>();
+    @Nullable
+    private ScheduledFuture<?> timer;
+
+    public CoalescingCacheManager(CacheManagerImpl<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize) {
+        this(delegate, window, unit, maxBatchSize,
+                Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cashe-coalesce-timer")),
+                Executors.newCachedThreadPool(new NamedThreadFactory("cashe-coalesce")), true);
+    }
+
+    /**
+     * @param scheduler schedules the flush of windows
+     * @param executor  runs the flushes
+     */
+    public CoalescingCacheManager(CacheManagerImpl<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize,
+                                  ScheduledExecutorService scheduler, Executor executor) {
+        this(delegate, window, unit, maxBatchSize, scheduler, executor, false);
+    }
+
+    private CoalescingCacheManager(CacheManagerImpl<X, ID> delegate, long window, TimeUnit unit, int maxBatchSize,
+                                   ScheduledExecutorService scheduler, Executor executor, boolean ownsExecutors) {
+        if (window < 0 || maxBatchSize <= 0) throw new IllegalArgumentException();
+        this.delegate = delegate;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.ownsExecutors = ownsExecutors;
+    }
+
+    @Override
+    public List<X> getByIds(Collection<ID> ids) {
+        return delegate.getByIds(ids);
+    }
+
+    @Override
+    public void updateByIds(Collection<X> entities) {
+        join(updateByIdsAsync(entities));
+    }
+
+    /**
+     * Updates the database, and coalesces the cache write.
+     *
+     * @return completed when the cache write is flushed
+     */
+    public CompletableFuture<Void> updateByIdsAsync(Collection<X> entities) {
+        List<ID> ids = entities.stream().map(delegate.idGetter).collect(Collectors.toList());
+        delegate.updateDatabase(ids, entities);
+        return enqueue(ids, true);
+    }
+
+    @Override
+    public void setNulls(Collection<ID> ids) {
+        join(setNullsAsync(ids));
+    }
+
+    /**
+     * @return completed when the null caches are flushed
+     */
+    public CompletableFuture<Void> setNullsAsync(Collection<ID> ids) {
+        return enqueue(ids, false);
+    }
+
+    private CompletableFuture<Void> enqueue(Collection<ID> ids, boolean updated) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Window<ID> full = null;
+        synchronized (lock) {
+            pending.add(ids, updated);
+            pending.futures.add(future);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (timer == null) {
+                timer = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            // the caller is going to wait for the flush anyway
+            write(full);
+        }
+        return future;
+    }
+
+    /**
+     * Flushes the pending writes without waiting for the window.
+     */
+    public void flush() {
+        Window<ID> window;
+        synchronized (lock) {
+            window = drain();
+        }
+        if (!window.futures.isEmpty()) {
+            executor.execute(() -> write(window));
+        }
+    }
+
+    private Window<ID> drain() {
+        Window<ID> window = pending;
+        pending = new Window<>();
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return window;
+    }
+
+    private void write(Window<ID> window) {
+        try {
+            Set<ID> ids = new LinkedHashSet<>(window.updated);
+            ids.addAll(window.nulls);
+            delegate.refresh(ids, window.updated);
+            window.futures.forEach(future -> future.complete(null));
+        } catch (Throwable e) {
+            window.futures.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void delete(Collection<ID> ids) {
+        delegate.delete(ids);
+    }
+
+    @Override
+    public void scheduledRefreshUpdated() {
+        delegate.scheduledRefreshUpdated();
+    }
+
+    @Override
+    public void scheduledRefreshAll() {
+        delegate.scheduledRefreshAll();
+    }
+
+    @Override
+    public Map<ID, Integer> getHotIds() {
+        return delegate.getHotIds();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (ownsExecutors) {
+            scheduler.shutdown();
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private static void join(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The writes of a window merged per id.
+     */
+    private static class Window<ID> {
+        final Set<ID> updated = new LinkedHashSet<>();
+        final Set<ID> nulls = new LinkedHashSet<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        void add(Collection<ID> ids, boolean update) {
+            for (ID id : ids) {
+                // an updated id is loaded from the database, which knows the latest of both
+                if (update) {
+                    nulls.remove(id);
+                    updated.add(id);
+                } else if (!updated.contains(id)) {
+                    nulls.add(id);
+                }
+            }
+        }
+
+        int size() {
+            return updated.size() + nulls.size();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.edsuns;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Collection;
 import java.util.List;
@@ -17,5 +18,20 @@ public interface Database<X, ID> {
 
     List<ID> getIdsByUpdatedBetween(long start, long end);
 
+    /**
+     * Scans all ids in key order for {@link CacheManager#scheduledRefreshAll()}.
+     * The cursor is persisted as the checkpoint of the scan, so it must stay valid across restarts,
+     * e.g. the last id of the page.
+     * <p>
+     * Defaults to a single page of all ids by {@link #getIdsByUpdatedBetween(long, long)} without a cursor,
+     * which is refreshed chunk by chunk but can't resume, override it to page through a large table.
+     *
+     * @param cursor position returned by the previous page, null to start from the first id
+     * @param limit  max size of the page
+     */
+    default Page<ID> scanIds(@Nullable String cursor, int limit) {
+        return new Page<>(getIdsByUpdatedBetween(0, Long.MAX_VALUE), null);
+    }
+
     String getEntityName();
 }
@@ -0,0 +1,152 @@
+package io.github.edsuns;
+
+import io.github.edsuns.metrics.Stage;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * {@link CacheManagerImpl} of {@code long} ids, {@link #getByIds(long[])} answers by the positions of the ids,
+ * so the hit path allocates the keys and the result only, the ids are boxed for the misses only.
+ * <p>
+ * Falls back to the generic path if hot keys, an existence filter or load leases are configured.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:35
+ */
+@ParametersAreNonnullByDefault
+public class LongCacheManagerImpl<X> extends CacheManagerImpl<X, Long> {
+
+    public LongCacheManagerImpl(CacheStorage cacheStorage, Database<X, Long> database, Function<X, Long> idGetter) {
+        super(cacheStorage, database, idGetter);
+    }
+
+    public LongCacheManagerImpl(CacheStorage cacheStorage, Database<X, Long> database,
+                                Function<X, Long> idGetter, CacheManagerConfig config) {
+        super(cacheStorage, database, idGetter, config);
+    }
+
+    @Override
+    public List<X> getByIds(Collection<Long> ids) {
+        if (!isSpecialized()) {
+            return super.getByIds(ids);
+        }
+        long[] array = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            array[i++] = id;
+        }
+        return lookup(array);
+    }
+
+    /**
+     * @return the values in the order of ids, null if not exists
+     */
+    public List<X> getByIds(long[] ids) {
+        if (!isSpecialized()) {
+            return super.getByIds(box(ids));
+        }
+        return lookup(ids);
+    }
+
+    private static List<Long> box(long[] ids) {
+        List<Long> boxed = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            boxed.add(id);
+        }
+        return boxed;
+    }
+
+    private boolean isSpecialized() {
+        return hotKeys == null && existenceFilter == null && config.getLoadLeaseMillis() <= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<X> lookup(long[] ids) {
+        long start = System.nanoTime();
+        String entity = database.getEntityName();
+        List<String> keys = composeKey(ids);
+        long getStart = System.nanoTime();
+        List<CacheValue> values;
+        try {
+            values = ids.length == 0 ? Collections.emptyList() : cacheStorage.get(keys, isTtlRead());
+        } catch (CacheUnavailableException e) {
+            List<Long> boxed = box(ids);
+            List<X> list = loadDegraded(boxed, boxed, e);
+            metrics.recordStage(entity, Stage.GET_BY_IDS, System.nanoTime() - start, ids.length);
+            return list;
+        }
+        metrics.recordStage(entity, Stage.CACHE_GET, System.nanoTime() - getStart, ids.length);
+
+        Object[] result = new Object[ids.length];
+        int[] misses = null;
+        int missCount = 0;
+        int nullHits = 0;
+        List<Long> refreshAhead = null;
+        for (int i = 0; i < ids.length; i++) {
+            @Nullable
+            CacheValue cache = i < values.size() ? values.get(i) : null;
+            if (cache != null && !cache.isNullCache()) {
+                Object x = cache.getValue();
+                result[i] = x;
+                if (x == null) {
+                    nullHits++;
+                }
+                if (shouldRefreshAhead(cache)) {
+                    if (refreshAhead == null) {
+                        refreshAhead = new ArrayList<>();
+                    }
+                    refreshAhead.add(ids[i]);
+                }
+            } else {
+                if (misses == null) {
+                    misses = new int[ids.length - i];
+                }
+                misses[missCount++] = i;
+            }
+        }
+        metrics.recordGets(entity, ids.length - missCount - nullHits, nullHits, missCount);
+        if (refreshAhead != null) {
+            refreshAhead(refreshAhead);
+        }
+        if (misses != null) {
+            loadMisses(ids, values, misses, missCount, result);
+        }
+        List<X> list = (List<X>) Arrays.asList(result);
+        metrics.recordStage(entity, Stage.GET_BY_IDS, System.nanoTime() - start, ids.length);
+        return list;
+    }
+
+    private void loadMisses(long[] ids, List<CacheValue> values, int[] misses, int missCount, Object[] result) {
+        Map<Long, CacheValue> unCached = new HashMap<>((int) (missCount / .75 + 1));
+        for (int j = 0; j < missCount; j++) {
+            int i = misses[j];
+            unCached.put(ids[i], i < values.size() ? values.get(i) : null);
+        }
+        List<X> data;
+        try {
+            data = load(unCached.keySet());
+        } catch (PartialLoadException e) {
+            putPartial(unCached, e);
+            throw e;
+        }
+        // un-cached id that has no data will be cached by a null value
+        putCache(values(unCached, data));
+        Map<Long, X> loaded = toMap(data);
+        for (int j = 0; j < missCount; j++) {
+            int i = misses[j];
+            result[i] = loaded.get(ids[i]);
+        }
+    }
+
+    protected List<String> composeKey(long[] ids) {
+        String prefix = getKeyPrefix();
+        List<String> keys = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            keys.add(prefix + id);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.edsuns;
+
+import io.github.edsuns.metrics.Stage;
+import io.github.edsuns.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Looks up the ids of several entities together, e.g. the books, authors and prices of a page.
+ * <p>
+ * The keys of all entities are read by one storage call, the misses of the entities are loaded
+ * from their databases in parallel, and the loaded values are put back by one storage call,
+ * so a page takes one round trip to Redis per slot instead of one per entity.
+ * <p>
+ * The registered managers share the storage of this. The lookups don't go through their hot key replicas.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:40
+ */
+@ParametersAreNonnullByDefault
+public class MultiCacheManager {
+    private final CacheStorage cacheStorage;
+    private final Executor executor;
+    private final Map<String, CacheManagerImpl<?, ?>> managers = new ConcurrentHashMap<>();
+
+    public MultiCacheManager(CacheStorage cacheStorage) {
+        this(cacheStorage, Executors.newCachedThreadPool(new NamedThreadFactory("cashe-multi-load")));
+    }
+
+    /**
+     * @param executor loads the misses of the entities in parallel
+     */
+    public MultiCacheManager(CacheStorage cacheStorage, Executor executor) {
+        this.cacheStorage = cacheStorage;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a manager by the entity name of its database.
+     *
+     * @throws IllegalArgumentException if the manager has another storage, or the entity is registered
+     */
+    public MultiCacheManager register(CacheManagerImpl<?, ?> manager) {
+        String entity = manager.database.getEntityName();
+        if (manager.cacheStorage != cacheStorage) {
+            throw new IllegalArgumentException("another storage of " + entity);
+        }
+        if (managers.putIfAbsent(entity, manager) != null) {
+            throw new IllegalArgumentException("duplicate entity " + entity);
+        }
+        return this;
+    }
+
+    /**
+     * @param request entity name to its ids
+     * @return entity name to the values in the order of its ids, null if not exists
+     * @throws IllegalArgumentException if an entity is not registered
+     */
+    public Map<String, List<?>> getByIds(Map<String, ? extends Collection<?>> request) {
+        long start = System.nanoTime();
+        List<Lookup<?, ?>> lookups = new ArrayList<>(request.size());
+        List<String> keys = new ArrayList<>();
+        request.forEach((entity, ids) -> {
+            CacheManagerImpl<?, ?> manager = managers.get(entity);
+            if (manager == null) {
+                throw new IllegalArgumentException("unregistered entity " + entity);
+            }
+            Lookup<?, ?> lookup = new Lookup<>(manager, ids);
+            lookups.add(lookup);
+            keys.addAll(lookup.keys);
+        });
+        boolean withTtl = lookups.stream().anyMatch(lookup -> lookup.manager.isTtlRead());
+
+        long getStart = System.nanoTime();
+        List<CacheValue> values;
+        try {
+            values = keys.isEmpty() ? Collections.emptyList() : cacheStorage.get(keys, withTtl);
+        } catch (CacheUnavailableException e) {
+            Map<String, List<?>> result = new LinkedHashMap<>((int) (lookups.size() / .75 + 1));
+            for (Lookup<?, ?> lookup : lookups) {
+                result.put(lookup.manager.database.getEntityName(), lookup.loadDegraded(e, start));
+            }
+            return result;
+        }
+        long getNanos = System.nanoTime() - getStart;
+        int offset = 0;
+        for (Lookup<?, ?> lookup : lookups) {
+            int end = Math.min(values.size(), offset + lookup.keys.size());
+            lookup.collect(values.subList(Math.min(offset, end), end), getNanos);
+            offset += lookup.keys.size();
+        }
+
+        // the entities loaded are put even if another one failed
+        RuntimeException failure = loadInParallel(lookups);
+
+        Map<TimeToLive, Map<String, CacheValue>> batches = new HashMap<>();
+        int putSize = 0;
+        for (Lookup<?, ?> lookup : lookups) {
+            if (lookup.fills != null) {
+                batches.computeIfAbsent(lookup.manager.ttl, k -> new HashMap<>()).putAll(lookup.fills);
+                putSize += lookup.fills.size();
+            }
+        }
+        if (putSize > 0) {
+            long putStart = System.nanoTime();
+            Set<String> failedKeys;
+            try {
+                failedKeys = new HashSet<>(cacheStorage.putAll(batches));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    throw e;
+                }
+                failure.addSuppressed(e);
+                throw failure;
+            }
+            long putNanos = System.nanoTime() - putStart;
+            for (Lookup<?, ?> lookup : lookups) {
+                lookup.recordPut(failedKeys, putNanos);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        Map<String, List<?>> result = new LinkedHashMap<>((int) (lookups.size() / .75 + 1));
+        long nanos = System.nanoTime() - start;
+        for (Lookup<?, ?> lookup : lookups) {
+            result.put(lookup.manager.database.getEntityName(), lookup.result(nanos));
+        }
+        return result;
+    }
+
+    /**
+     * Loads the misses of every entity, the first entity on the calling thread.
+     *
+     * @return the failure of the first entity failed, the others are suppressed by it, null if none failed
+     */
+    @Nullable
+    private RuntimeException loadInParallel(List<Lookup<?, ?>> lookups) {
+        Lookup<?, ?> first = null;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Lookup<?, ?> lookup : lookups) {
+            if (lookup.unCached == null) {
+                continue;
+            }
+            if (first == null) {
+                first = lookup;
+            } else {
+                futures.add(CompletableFuture.runAsync(lookup::load, executor));
+            }
+        }
+        RuntimeException failure = null;
+        if (first != null) {
+            try {
+                first.load();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Lookup of the ids of an entity.
+     */
+    private static class Lookup<X, ID> {
+        final CacheManagerImpl<X, ID> manager;
+        final Collection<ID> ids;
+        final Collection<ID> existingIds;
+        final List<String> keys;
+        final Map<ID, X> result;
+        @Nullable
+        Map<ID, CacheValue> unCached;
+        @Nullable
+        Map<String, CacheValue> fills;
+        List<X> data = Collections.emptyList();
+
+        @SuppressWarnings("unchecked")
+        Lookup(CacheManagerImpl<X, ID> manager, Collection<?> ids) {
+            this.manager = manager;
+            this.ids = (Collection<ID>) ids;
+            this.existingIds = manager.filterAbsent(this.ids);
+            this.keys = manager.composeKey(existingIds);
+            this.result = new HashMap<>((int) (ids.size() / .75 + 1));
+        }
+
+        void collect(List<CacheValue> values, long getNanos) {
+            String entity = manager.database.getEntityName();
+            manager.metrics.recordStage(entity, Stage.CACHE_GET, getNanos, existingIds.size());
+            unCached = manager.collectCached(existingIds, manager.toIdValueMap(existingIds, values), result);
+        }
+
+        void load() {
+            Map<ID, CacheValue> unCached = Objects.requireNonNull(this.unCached);
+            try {
+                data = manager.load(unCached.keySet());
+            } catch (PartialLoadException e) {
+                manager.putPartial(unCached, e);
+                throw e;
+            }
+            // un-cached id that has no data will be cached by a null value
+            fills = manager.values(unCached, data);
+        }
+
+        void recordPut(Set<String> failedKeys, long putNanos) {
+            if (fills == null) {
+                return;
+            }
+            String entity = manager.database.getEntityName();
+            manager.metrics.recordStage(entity, Stage.CACHE_PUT, putNanos, fills.size());
+            int conflicts = 0;
+            for (String key : fills.keySet()) {
+                if (failedKeys.contains(key)) {
+                    conflicts++;
+                }
+            }
+            if (conflicts > 0) {
+                manager.metrics.recordConflicts(entity, conflicts);
+            }
+        }
+
+        List<X> loadDegraded(CacheUnavailableException e, long start) {
+            List<X> list = manager.loadDegraded(ids, existingIds, e);
+            manager.metrics.recordStage(manager.database.getEntityName(), Stage.GET_BY_IDS, System.nanoTime() - start, ids.size());
+            return list;
+        }
+
+        List<X> result(long nanos) {
+            data.forEach(x -> result.put(manager.idGetter.apply(x), x));
+            List<X> list = new ArrayList<>(ids.size());
+            for (ID id : ids) {
+                list.add(result.get(id));
+            }
+            manager.metrics.recordStage(manager.database.getEntityName(), Stage.GET_BY_IDS, nanos, ids.size());
+            return list;
+        }
+    }
+}
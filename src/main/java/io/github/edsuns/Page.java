@@ -0,0 +1,35 @@
+package io.github.edsuns;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.List;
+
+/**
+ * A page of ids scanned in key order.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 17:20
+ */
+@ParametersAreNonnullByDefault
+public class Page<ID> {
+    private final List<ID> ids;
+    @Nullable
+    private final String nextCursor;
+
+    /**
+     * @param nextCursor position of the next page, null if this is the last page
+     */
+    public Page(List<ID> ids, @Nullable String nextCursor) {
+        this.ids = ids;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ID> getIds() {
+        return ids;
+    }
+
+    @Nullable
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.edsuns;
+
+import java.util.List;
+
+/**
+ * Thrown when some chunks of a database load failed while the others loaded.
+ * The cause is the error of the first failed chunk, the errors of the other chunks are suppressed.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:05
+ */
+public class PartialLoadException extends RuntimeException {
+    private static final long serialVersionUID = -3497915331384658042L;
+
+    private final transient List<?> loaded;
+    private final transient List<?> failedIds;
+
+    public PartialLoadException(List<?> loaded, List<?> failedIds, Throwable cause) {
+        super(failedIds.size() + " ids failed to load", cause);
+        this.loaded = loaded;
+        this.failedIds = failedIds;
+    }
+
+    /**
+     * @return the entities of the chunks that loaded
+     */
+    public List<?> getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the ids of the chunks that failed
+     */
+    public List<?> getFailedIds() {
+        return failedIds;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.edsuns;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Expiration of the cached values of an entity.
+ * <p>
+ * A random jitter of up to {@code jitter * ttl} is added to every ttl,
+ * so the values put by a bulk load don't expire all at once.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 14:20
+ */
+public class TimeToLive {
+    public static final TimeToLive NEVER = new TimeToLive(0, 0, 0);
+
+    private final long millis;
+    private final long nullMillis;
+    private final double jitter;
+
+    /**
+     * @param millis     ttl of values, 0 means never expire
+     * @param nullMillis ttl of null caches, 0 means never expire
+     * @param jitter     max jitter as a ratio of the ttl
+     */
+    public TimeToLive(long millis, long nullMillis, double jitter) {
+        if (millis < 0 || nullMillis < 0 || jitter < 0) throw new IllegalArgumentException();
+        this.millis = millis;
+        this.nullMillis = nullMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param nullCache whether the value is a null cache
+     * @return ttl in millis with jitter, 0 means never expire
+     */
+    public long nextMillis(boolean nullCache) {
+        long ttl = nullCache ? nullMillis : millis;
+        long spread = (long) (ttl * jitter);
+        if (spread <= 0) {
+            return ttl;
+        }
+        return ttl + ThreadLocalRandom.current().nextLong(spread + 1);
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public long getNullMillis() {
+        return nullMillis;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+}
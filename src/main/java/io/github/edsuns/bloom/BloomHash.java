@@ -0,0 +1,50 @@
+package io.github.edsuns.bloom;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Bloom filter math, the hash of an id only depends on its string form so that instances agree on it.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:34
+ */
+@ParametersAreNonnullByDefault
+public final class BloomHash {
+    private BloomHash() {
+    }
+
+    /**
+     * FNV-1a over the chars of {@code String.valueOf(id)}, then the finalizer of MurmurHash3.
+     */
+    public static long hash(Object id) {
+        String s = String.valueOf(id);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the i-th bit index of the hash by double hashing
+     */
+    public static long index(long hash, int i, long bits) {
+        long combined = (int) hash + (long) i * (int) (hash >>> 32);
+        return Math.floorMod(combined, bits);
+    }
+
+    public static long optimalBits(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) throw new IllegalArgumentException();
+        return Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+
+    public static int optimalHashes(long expectedInsertions, long bits) {
+        return Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.edsuns.bloom;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Filter of the ids that definitely don't exist, may answer that a missing id exists but never the opposite.
+ * <p>
+ * Nothing is absent until the filter is built by {@link #rebuild()}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:30
+ */
+@ParametersAreNonnullByDefault
+public interface ExistenceFilter<ID> {
+    /**
+     * Marks the ids as existing, they are also put into the rebuild in progress.
+     * <p>
+     * A rebuild started meanwhile may scan past the rows not visible yet,
+     * so the ids put before their rows are visible are put again once visible.
+     */
+    void put(Collection<ID> ids);
+
+    /**
+     * @return the ids that definitely don't exist, empty if the filter is not built yet
+     */
+    Set<ID> absent(Collection<ID> ids);
+
+    /**
+     * Starts a rebuild, the filter is replaced by the rebuilt one on commit.
+     */
+    Builder<ID> rebuild();
+
+    interface Builder<ID> {
+        void put(Collection<ID> ids);
+
+        void commit();
+    }
+}
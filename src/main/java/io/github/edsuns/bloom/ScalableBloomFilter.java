@@ -0,0 +1,184 @@
+package io.github.edsuns.bloom;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process {@link ExistenceFilter} that grows as ids are put.
+ * <p>
+ * Once a stage is full, a stage of double capacity and half false positive probability is added,
+ * so the overall false positive probability stays under twice of the initial one.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:40
+ */
+@ParametersAreNonnullByDefault
+public class ScalableBloomFilter<ID> implements ExistenceFilter<ID> {
+    private final long initialCapacity;
+    private final double fpp;
+    @Nullable
+    private volatile Filter current;
+    @Nullable
+    private volatile Filter building;
+
+    /**
+     * @param initialCapacity ids of the first stage
+     * @param fpp             false positive probability of the first stage
+     */
+    public ScalableBloomFilter(long initialCapacity, double fpp) {
+        if (initialCapacity <= 0 || fpp <= 0 || fpp >= 1) throw new IllegalArgumentException();
+        this.initialCapacity = initialCapacity;
+        this.fpp = fpp;
+    }
+
+    @Override
+    public void put(Collection<ID> ids) {
+        // read before the current, a commit in between is seen by the current
+        Filter rebuilding = building;
+        Filter filter = current;
+        for (ID id : ids) {
+            long hash = BloomHash.hash(id);
+            if (filter != null) {
+                filter.put(hash);
+            }
+            if (rebuilding != null && rebuilding != filter) {
+                rebuilding.put(hash);
+            }
+        }
+    }
+
+    @Override
+    public Set<ID> absent(Collection<ID> ids) {
+        Filter filter = current;
+        if (filter == null) {
+            return Collections.emptySet();
+        }
+        Set<ID> absent = null;
+        for (ID id : ids) {
+            if (!filter.mightContain(BloomHash.hash(id))) {
+                if (absent == null) {
+                    absent = new HashSet<>();
+                }
+                absent.add(id);
+            }
+        }
+        return absent == null ? Collections.emptySet() : absent;
+    }
+
+    @Override
+    public Builder<ID> rebuild() {
+        Filter filter = new Filter();
+        building = filter;
+        return new Builder<ID>() {
+            @Override
+            public void put(Collection<ID> ids) {
+                for (ID id : ids) {
+                    filter.put(BloomHash.hash(id));
+                }
+            }
+
+            @Override
+            public void commit() {
+                current = filter;
+                building = null;
+            }
+        };
+    }
+
+    /**
+     * @return count of the ids put, duplicates are mostly counted once
+     */
+    public long size() {
+        Filter filter = current;
+        if (filter == null) {
+            return 0;
+        }
+        long size = 0;
+        for (Stage stage : filter.stages) {
+            size += stage.count.get();
+        }
+        return size;
+    }
+
+    private class Filter {
+        final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+        Filter() {
+            stages.add(new Stage(initialCapacity, fpp));
+        }
+
+        void put(long hash) {
+            if (mightContain(hash)) {
+                return;
+            }
+            Stage last = stages.get(stages.size() - 1);
+            if (last.count.get() >= last.capacity) {
+                last = grow(last);
+            }
+            last.put(hash);
+        }
+
+        boolean mightContain(long hash) {
+            for (Stage stage : stages) {
+                if (stage.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized Stage grow(Stage full) {
+            Stage last = stages.get(stages.size() - 1);
+            if (last != full) {
+                return last;
+            }
+            Stage stage = new Stage(full.capacity * 2, full.fpp / 2);
+            stages.add(stage);
+            return stage;
+        }
+    }
+
+    private static class Stage {
+        final long capacity;
+        final double fpp;
+        final long bits;
+        final int hashes;
+        final AtomicLongArray words;
+        final AtomicLong count = new AtomicLong();
+
+        Stage(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            this.bits = BloomHash.optimalBits(capacity, fpp);
+            this.hashes = BloomHash.optimalHashes(capacity, bits);
+            this.words = new AtomicLongArray((int) ((bits + 63) >>> 6));
+        }
+
+        void put(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                long index = BloomHash.index(hash, i, bits);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+            count.incrementAndGet();
+        }
+
+        boolean mightContain(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                long index = BloomHash.index(hash, i, bits);
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
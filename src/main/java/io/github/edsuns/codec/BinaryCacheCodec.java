@@ -0,0 +1,170 @@
+package io.github.edsuns.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.edsuns.CacheCodec;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact codec that identifies the class of a value by a registered id instead of its class name.
+ * <p>
+ * Layout: a null cache is the single byte {@code 0x00}, a value is {@code 0x01 | class id varint | payload}.
+ * The leading byte is the format version, bytes led by <code>{</code> are legacy entries and decoded by
+ * the legacy codec, so the existing JSON entries stay readable without a flush.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 15:16
+ */
+@ParametersAreNonnullByDefault
+public class BinaryCacheCodec implements CacheCodec {
+    private static final byte NULL_CACHE = 0;
+    private static final byte FORMAT_V1 = 1;
+    private static final byte LEGACY_JSON = '{';
+
+    private final Map<Class<?>, Registration<?>> byClass = new ConcurrentHashMap<>();
+    private final Map<Integer, Registration<?>> byId = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final CacheCodec legacy;
+    private final boolean writeLegacy;
+
+    public BinaryCacheCodec() {
+        this(new JsonCacheCodec(), false);
+    }
+
+    /**
+     * @param legacy      decodes the entries that are not written by this codec
+     * @param writeLegacy keep writing the legacy format while instances without this codec are still running
+     */
+    public BinaryCacheCodec(CacheCodec legacy, boolean writeLegacy) {
+        this.legacy = legacy;
+        this.writeLegacy = writeLegacy;
+    }
+
+    /**
+     * Registers a class whose payload is its JSON without type information.
+     */
+    public <T> void register(int id, Class<T> type) {
+        register(id, type, new ValueSerializer<T>() {
+            @Override
+            public void write(T value, DataOutput out) throws IOException {
+                mapper.writeValue(out, value);
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                return mapper.readValue(in, type);
+            }
+        });
+    }
+
+    public <T> void register(int id, Class<T> type, ValueSerializer<T> serializer) {
+        if (id < 0) throw new IllegalArgumentException("negative id " + id);
+        Registration<T> registration = new Registration<>(id, type, serializer);
+        if (byId.putIfAbsent(id, registration) != null) {
+            throw new IllegalArgumentException("duplicate id " + id);
+        }
+        byClass.put(type, registration);
+    }
+
+    @Override
+    public byte[] encode(@Nullable Object value) {
+        if (writeLegacy) {
+            return legacy.encode(value);
+        }
+        if (value == null) {
+            return new byte[]{NULL_CACHE};
+        }
+        @SuppressWarnings("unchecked")
+        Registration<Object> registration = (Registration<Object>) byClass.get(value.getClass());
+        if (registration == null) {
+            throw new IllegalArgumentException("unregistered " + value.getClass());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_V1);
+            writeVarint(out, registration.id);
+            registration.serializer.write(value, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("empty bytes");
+        }
+        switch (bytes[0]) {
+            case NULL_CACHE:
+                return null;
+            case FORMAT_V1:
+                break;
+            case LEGACY_JSON:
+                return legacy.decode(bytes);
+            default:
+                throw new IllegalArgumentException("unknown format " + bytes[0]);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            int id = readVarint(in);
+            Registration<?> registration = byId.get(id);
+            if (registration == null) {
+                throw new IllegalArgumentException("unregistered id " + id);
+            }
+            return registration.serializer.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * Writes and reads the payload of a registered class.
+     */
+    public interface ValueSerializer<T> {
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    private static class Registration<T> {
+        final int id;
+        final Class<T> type;
+        final ValueSerializer<T> serializer;
+
+        Registration(int id, Class<T> type, ValueSerializer<T> serializer) {
+            this.id = id;
+            this.type = type;
+            this.serializer = serializer;
+        }
+    }
+}
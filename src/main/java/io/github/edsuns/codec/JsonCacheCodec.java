@@ -0,0 +1,40 @@
+package io.github.edsuns.codec;
+
+import io.github.edsuns.CacheCodec;
+import io.github.edsuns.util.Some;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * JSON with embedded class names, every value is wrapped by {@link Some} so null caches are distinguishable.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 15:08
+ */
+@ParametersAreNonnullByDefault
+public class JsonCacheCodec implements CacheCodec {
+    private final RedisSerializer<Object> serializer;
+
+    public JsonCacheCodec() {
+        this(new GenericJackson2JsonRedisSerializer());
+    }
+
+    public JsonCacheCodec(RedisSerializer<Object> serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public byte[] encode(@Nullable Object value) {
+        return serializer.serialize(new Some(value));
+    }
+
+    @Nullable
+    @Override
+    public Object decode(byte[] bytes) {
+        Some some = (Some) serializer.deserialize(bytes);
+        return some == null ? null : some.getValue();
+    }
+}
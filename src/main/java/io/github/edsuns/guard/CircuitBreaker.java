@@ -0,0 +1,74 @@
+package io.github.edsuns.guard;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens after consecutive failures, and lets a single probe through once it has been open for a while.
+ * The probe closes it by a success, or opens it again by a failure.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:10
+ */
+@ParametersAreNonnullByDefault
+class CircuitBreaker {
+    enum Permit {
+        PASS,
+        /**
+         * the single call through a breaker that has been open long enough
+         */
+        PROBE,
+        REJECT
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold <= 0 || openMillis < 0) throw new IllegalArgumentException();
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    synchronized Permit acquire() {
+        switch (state) {
+            case CLOSED:
+                return Permit.PASS;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return Permit.PROBE;
+                }
+                return Permit.REJECT;
+            default:
+                // a probe is in flight
+                return Permit.REJECT;
+        }
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            failures = 0;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+}
@@ -0,0 +1,456 @@
+package io.github.edsuns.guard;
+
+import io.github.edsuns.AsyncCacheStorage;
+import io.github.edsuns.CacheStorage;
+import io.github.edsuns.CacheUnavailableException;
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.metrics.CacheMetrics;
+import io.github.edsuns.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the latency of another {@link CacheStorage} by a budget per call, and skips it by a circuit breaker
+ * once the calls keep failing or running over budget, so a slow Redis doesn't pile up the request threads.
+ * <p>
+ * A read that can't answer in time throws {@link CacheUnavailableException}, which the cache managers answer
+ * from the database under a concurrency limit, or a local tier such as {@link io.github.edsuns.near.NearCacheStorage}
+ * in front of this answers first. A version read answers null versions instead, as the put that follows is deferred.
+ * A write that can't complete in time turns into a deferred invalidation of its keys. The deferred invalidations
+ * are replayed by the probe that closes the circuit, and in background by the calls after a transient failure,
+ * so the values written around the outage are reloaded. Beyond the max deferred invalidations the oldest ones
+ * are dropped and left to their ttl, the drops are counted in metrics and logged.
+ * <p>
+ * Over a storage that is also an {@link AsyncCacheStorage}, the calls wait for the async api, otherwise they run
+ * on the executor while the caller waits within the budget. The async api of this is guarded the same,
+ * a read fails by {@link CacheUnavailableException} without blocking.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:10
+ */
+@ParametersAreNonnullByDefault
+public class GuardedCacheStorage implements CacheStorage, AsyncCacheStorage {
+    private static final Logger log = LoggerFactory.getLogger(GuardedCacheStorage.class);
+    private static final int REPLAY_CHUNK_SIZE = 1000;
+
+    private final CacheStorage delegate;
+    @Nullable
+    private final AsyncCacheStorage asyncDelegate;
+    private final long readBudgetMillis;
+    private final long writeBudgetMillis;
+    private final int maxDeferredInvalidations;
+    private final Executor executor;
+    private final CircuitBreaker breaker;
+    private final String name;
+    private final CacheMetrics metrics;
+    /**
+     * key to the sequence of its latest deferral, in the order of deferral
+     */
+    private final LinkedHashMap<String, Long> deferred = new LinkedHashMap<>();
+    private long sequence;
+    /**
+     * whether the deferred invalidations have been dropped since they were last drained, guarded by deferred
+     */
+    private boolean dropping;
+    private final AtomicLong droppedInvalidations = new AtomicLong();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    public GuardedCacheStorage(CacheStorage delegate) {
+        this(delegate, new GuardedCacheStorageConfig());
+    }
+
+    public GuardedCacheStorage(CacheStorage delegate, GuardedCacheStorageConfig config) {
+        this.delegate = delegate;
+        this.asyncDelegate = delegate instanceof AsyncCacheStorage ? (AsyncCacheStorage) delegate : null;
+        this.readBudgetMillis = config.getReadBudgetMillis();
+        this.writeBudgetMillis = config.getWriteBudgetMillis();
+        this.maxDeferredInvalidations = config.getMaxDeferredInvalidations();
+        this.executor = Optional.ofNullable(config.getExecutor()).orElseGet(() -> new ThreadPoolExecutor(
+                0, 64, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new NamedThreadFactory("cashe-guard")));
+        this.breaker = new CircuitBreaker(config.getFailureThreshold(), config.getOpenMillis());
+        this.name = config.getName();
+        this.metrics = config.getMetrics();
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values) {
+        try {
+            return call(writeBudgetMillis, () -> delegate.put(values), null);
+        } catch (CacheUnavailableException e) {
+            defer(values.keySet());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values, TimeToLive ttl) {
+        try {
+            return call(writeBudgetMillis, () -> delegate.put(values, ttl),
+                    asyncDelegate == null ? null : () -> asyncDelegate.putAsync(values, ttl));
+        } catch (CacheUnavailableException e) {
+            defer(values.keySet());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<String> putAll(Map<TimeToLive, Map<String, CacheValue>> batches) {
+        try {
+            return call(writeBudgetMillis, () -> delegate.putAll(batches), null);
+        } catch (CacheUnavailableException e) {
+            batches.values().forEach(values -> defer(values.keySet()));
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @throws CacheUnavailableException if the storage can't answer within the budget or the circuit is open
+     */
+    @Override
+    public List<CacheValue> get(Collection<String> keys) {
+        return get(keys, false);
+    }
+
+    /**
+     * @throws CacheUnavailableException if the storage can't answer within the budget or the circuit is open
+     */
+    @Override
+    public List<CacheValue> get(Collection<String> keys, boolean withTtl) {
+        return call(readBudgetMillis, () -> delegate.get(keys, withTtl),
+                asyncDelegate == null ? null : () -> asyncDelegate.getAsync(keys, withTtl));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> putAsync(Map<String, CacheValue> values, TimeToLive ttl) {
+        return callAsync(writeBudgetMillis, () -> delegate.put(values, ttl),
+                asyncDelegate == null ? null : () -> asyncDelegate.putAsync(values, ttl))
+                .exceptionally(e -> {
+                    defer(values.keySet());
+                    return Collections.emptyList();
+                });
+    }
+
+    /**
+     * @return a future failed by {@link CacheUnavailableException} if the storage can't answer within the budget
+     * or the circuit is open
+     */
+    @Override
+    public CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys) {
+        return getAsync(keys, false);
+    }
+
+    /**
+     * @return a future failed by {@link CacheUnavailableException} if the storage can't answer within the budget
+     * or the circuit is open
+     */
+    @Override
+    public CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys, boolean withTtl) {
+        return callAsync(readBudgetMillis, () -> delegate.get(keys, withTtl),
+                asyncDelegate == null ? null : () -> asyncDelegate.getAsync(keys, withTtl));
+    }
+
+    /**
+     * @throws CacheUnavailableException if the storage can't answer within the budget or the circuit is open
+     */
+    @Override
+    public List<CacheValue> getAndLease(Collection<String> keys, long leaseMillis, boolean withTtl) {
+        return call(readBudgetMillis, () -> delegate.getAndLease(keys, leaseMillis, withTtl), null);
+    }
+
+    @Override
+    public void releaseLeases(Map<String, String> leases) {
+        try {
+            call(writeBudgetMillis, () -> {
+                delegate.releaseLeases(leases);
+                return null;
+            }, null);
+        } catch (CacheUnavailableException e) {
+            // the leases expire
+        }
+    }
+
+    /**
+     * @return null versions if the storage can't answer within the budget or the circuit is open
+     */
+    @Override
+    public List<Integer> getVersions(Collection<String> keys) {
+        try {
+            return call(readBudgetMillis, () -> delegate.getVersions(keys),
+                    asyncDelegate == null ? null : () -> asyncDelegate.getVersionsAsync(keys));
+        } catch (CacheUnavailableException e) {
+            return new ArrayList<>(Collections.nCopies(keys.size(), null));
+        }
+    }
+
+    /**
+     * @return null versions if the storage can't answer within the budget or the circuit is open
+     */
+    @Override
+    public CompletableFuture<List<Integer>> getVersionsAsync(Collection<String> keys) {
+        return callAsync(readBudgetMillis, () -> delegate.getVersions(keys),
+                asyncDelegate == null ? null : () -> asyncDelegate.getVersionsAsync(keys))
+                .exceptionally(e -> new ArrayList<>(Collections.nCopies(keys.size(), null)));
+    }
+
+    @Override
+    public void delete(Collection<String> keys) {
+        try {
+            call(writeBudgetMillis, () -> {
+                delegate.delete(keys);
+                return null;
+            }, asyncDelegate == null ? null : () -> asyncDelegate.deleteAsync(keys));
+        } catch (CacheUnavailableException e) {
+            defer(keys);
+        }
+    }
+
+    @Override
+    public void markStale(Collection<String> keys, long maxStaleMillis) {
+        try {
+            call(writeBudgetMillis, () -> {
+                delegate.markStale(keys, maxStaleMillis);
+                return null;
+            }, asyncDelegate == null ? null : () -> asyncDelegate.markStaleAsync(keys, maxStaleMillis));
+        } catch (CacheUnavailableException e) {
+            defer(keys);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Collection<String> keys) {
+        return callAsync(writeBudgetMillis, () -> {
+            delegate.delete(keys);
+            return null;
+        }, asyncDelegate == null ? null : () -> asyncDelegate.deleteAsync(keys)).exceptionally(e -> {
+            defer(keys);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> markStaleAsync(Collection<String> keys, long maxStaleMillis) {
+        return callAsync(writeBudgetMillis, () -> {
+            delegate.markStale(keys, maxStaleMillis);
+            return null;
+        }, asyncDelegate == null ? null : () -> asyncDelegate.markStaleAsync(keys, maxStaleMillis)).exceptionally(e -> {
+            defer(keys);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveTimestampMillis(String key, long timeMillis) {
+        delegate.saveTimestampMillis(key, timeMillis);
+    }
+
+    @Override
+    public long getTimestampMillis(String key) {
+        return delegate.getTimestampMillis(key);
+    }
+
+    @Override
+    public void saveCheckpoint(String key, @Nullable String checkpoint) {
+        delegate.saveCheckpoint(key, checkpoint);
+    }
+
+    @Nullable
+    @Override
+    public String getCheckpoint(String key) {
+        return delegate.getCheckpoint(key);
+    }
+
+    /**
+     * @return true if the storage is skipped
+     */
+    public boolean isOpen() {
+        return breaker.isOpen();
+    }
+
+    public int getDeferredInvalidations() {
+        synchronized (deferred) {
+            return deferred.size();
+        }
+    }
+
+    /**
+     * @return count of the deferred invalidations dropped over the max, their keys are left to their ttl
+     */
+    public long getDroppedInvalidations() {
+        return droppedInvalidations.get();
+    }
+
+    private <T> T call(long budgetMillis, Supplier<T> call, @Nullable Supplier<CompletableFuture<T>> asyncCall) {
+        CircuitBreaker.Permit permit = breaker.acquire();
+        if (permit == CircuitBreaker.Permit.REJECT) {
+            throw new CacheUnavailableException("circuit open");
+        }
+        T result;
+        try {
+            if (permit == CircuitBreaker.Permit.PROBE) {
+                // the values written while open are invalidated before the storage serves again
+                replay();
+            }
+            result = within(budgetMillis, call, asyncCall);
+        } catch (CacheUnavailableException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        breaker.onSuccess();
+        if (getDeferredInvalidations() > 0) {
+            replayAsync();
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #call(long, Supplier, Supplier)}, but never blocks.
+     */
+    private <T> CompletableFuture<T> callAsync(long budgetMillis, Supplier<T> call,
+                                               @Nullable Supplier<CompletableFuture<T>> asyncCall) {
+        CircuitBreaker.Permit permit = breaker.acquire();
+        if (permit == CircuitBreaker.Permit.REJECT) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new CacheUnavailableException("circuit open"));
+            return rejected;
+        }
+        Supplier<CompletableFuture<T>> start = asyncCall != null ? asyncCall
+                : () -> CompletableFuture.supplyAsync(call, executor);
+        CompletableFuture<T> future;
+        try {
+            // the values written while open are invalidated before the storage serves again
+            future = permit == CircuitBreaker.Permit.PROBE
+                    ? CompletableFuture.runAsync(this::replay, executor).thenCompose(v -> start.get()) : start.get();
+            if (budgetMillis > 0) {
+                future = future.copy().orTimeout(budgetMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            // including a rejected execution
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((result, e) -> {
+            if (e != null) {
+                breaker.onFailure();
+                throw new CompletionException(unavailable(budgetMillis, e));
+            }
+            breaker.onSuccess();
+            if (getDeferredInvalidations() > 0) {
+                replayAsync();
+            }
+            return result;
+        });
+    }
+
+    private static CacheUnavailableException unavailable(long budgetMillis, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CacheUnavailableException) {
+            return (CacheUnavailableException) cause;
+        }
+        if (cause instanceof TimeoutException) {
+            return new CacheUnavailableException("over the budget of " + budgetMillis + "ms");
+        }
+        return new CacheUnavailableException("storage failed", cause);
+    }
+
+    private <T> T within(long budgetMillis, Supplier<T> call, @Nullable Supplier<CompletableFuture<T>> asyncCall) {
+        try {
+            if (budgetMillis <= 0) {
+                return call.get();
+            }
+            CompletableFuture<T> future = asyncCall != null ? asyncCall.get() : CompletableFuture.supplyAsync(call, executor);
+            return future.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new CacheUnavailableException("over the budget of " + budgetMillis + "ms");
+        } catch (ExecutionException e) {
+            throw new CacheUnavailableException("storage failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheUnavailableException("interrupted", e);
+        } catch (RuntimeException e) {
+            // including a rejected execution
+            throw new CacheUnavailableException("storage failed", e);
+        }
+    }
+
+    private void defer(Collection<String> keys) {
+        synchronized (deferred) {
+            for (String key : keys) {
+                // moves the key to the end
+                deferred.remove(key);
+                deferred.put(key, ++sequence);
+            }
+            int dropped = 0;
+            Iterator<String> it = deferred.keySet().iterator();
+            while (deferred.size() > maxDeferredInvalidations && it.hasNext()) {
+                it.next();
+                it.remove();
+                dropped++;
+            }
+            if (dropped > 0) {
+                droppedInvalidations.addAndGet(dropped);
+                metrics.recordDroppedInvalidations(name, dropped);
+                if (!dropping) {
+                    dropping = true;
+                    log.warn("{} over {} deferred invalidations, the oldest are dropped and left to their ttl",
+                            name, maxDeferredInvalidations);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the deferred keys chunk by chunk, each within the write budget.
+     */
+    private void replay() {
+        List<Map.Entry<String, Long>> snapshot;
+        synchronized (deferred) {
+            snapshot = new ArrayList<>(deferred.size());
+            deferred.forEach((key, seq) -> snapshot.add(new AbstractMap.SimpleImmutableEntry<>(key, seq)));
+        }
+        for (int i = 0; i < snapshot.size(); i += REPLAY_CHUNK_SIZE) {
+            List<Map.Entry<String, Long>> chunk = snapshot.subList(i, Math.min(snapshot.size(), i + REPLAY_CHUNK_SIZE));
+            List<String> keys = new ArrayList<>(chunk.size());
+            chunk.forEach(entry -> keys.add(entry.getKey()));
+            within(writeBudgetMillis, () -> {
+                delegate.delete(keys);
+                return null;
+            }, asyncDelegate == null ? null : () -> asyncDelegate.deleteAsync(keys));
+            synchronized (deferred) {
+                // a key deferred again meanwhile stays
+                chunk.forEach(entry -> deferred.remove(entry.getKey(), entry.getValue()));
+                if (deferred.isEmpty()) {
+                    dropping = false;
+                }
+            }
+        }
+    }
+
+    private void replayAsync() {
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    replay();
+                } catch (CacheUnavailableException e) {
+                    breaker.onFailure();
+                } finally {
+                    replaying.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // a later call tries again
+            replaying.set(false);
+        }
+    }
+}
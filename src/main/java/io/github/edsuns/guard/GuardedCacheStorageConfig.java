@@ -0,0 +1,114 @@
+package io.github.edsuns.guard;
+
+import io.github.edsuns.metrics.CacheMetrics;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Options of {@link GuardedCacheStorage}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:10
+ */
+public class GuardedCacheStorageConfig {
+    /**
+     * budget in millis of a value or version read, 0 means no budget
+     */
+    private long readBudgetMillis = 50;
+    /**
+     * budget in millis of a put, delete or stale mark, 0 means no budget
+     */
+    private long writeBudgetMillis = 100;
+    /**
+     * consecutive failed or over-budget calls that open the circuit
+     */
+    private int failureThreshold = 5;
+    /**
+     * time in millis the circuit stays open before a call probes the storage again
+     */
+    private long openMillis = 1000;
+    /**
+     * max keys of the deferred invalidations, beyond it the oldest ones are dropped and left to their ttl
+     */
+    private int maxDeferredInvalidations = 100_000;
+    /**
+     * runs the calls of a storage without async api within their budgets,
+     * defaults to a pool of at most 64 threads without a queue, a rejected call counts as failed
+     */
+    @Nullable
+    private Executor executor;
+    /**
+     * name of the storage in metrics and logs
+     */
+    private String name = "guarded";
+    /**
+     * records the deferred invalidations dropped over the max
+     */
+    private CacheMetrics metrics = CacheMetrics.NOOP;
+
+    public long getReadBudgetMillis() {
+        return readBudgetMillis;
+    }
+
+    public void setReadBudgetMillis(long readBudgetMillis) {
+        this.readBudgetMillis = readBudgetMillis;
+    }
+
+    public long getWriteBudgetMillis() {
+        return writeBudgetMillis;
+    }
+
+    public void setWriteBudgetMillis(long writeBudgetMillis) {
+        this.writeBudgetMillis = writeBudgetMillis;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public int getMaxDeferredInvalidations() {
+        return maxDeferredInvalidations;
+    }
+
+    public void setMaxDeferredInvalidations(int maxDeferredInvalidations) {
+        this.maxDeferredInvalidations = maxDeferredInvalidations;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,315 @@
+package io.github.edsuns.hot;
+
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.util.FrequencySketch;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Finds the top N most read ids by a {@link FrequencySketch}, and keeps their cached values in a local replica,
+ * so the reads of a hot id don't all go to the single storage key of it.
+ * <p>
+ * A pinned value is served locally until the revalidate interval passes, then its version is read from the storage,
+ * and the value is served locally for another interval if the version is unchanged, or read again otherwise.
+ * The writes of this instance unpin the ids, the writes of others are seen within the interval.
+ * A value read before the latest unpin of its id is not pinned.
+ * <p>
+ * The top is ranked by a min-heap of the frequencies, so the admission of an id costs O(log N).
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:40
+ */
+@ParametersAreNonnullByDefault
+public class HotKeys<ID> {
+    private final int topN;
+    private final long revalidateNanos;
+    private final FrequencySketch<ID> sketch;
+    private final Set<ID> top = ConcurrentHashMap.newKeySet();
+    /**
+     * the top by the frequencies when ranked, guarded by this
+     */
+    private final PriorityQueue<Ranked<ID>> ranking = new PriorityQueue<>(Comparator.comparingInt(r -> r.frequency));
+    private final ConcurrentMap<ID, Pinned> replica = new ConcurrentHashMap<>();
+    private final AtomicLong unpins = new AtomicLong();
+    /**
+     * the latest unpin of the ids by hash, an id shares its stamp with others at worst
+     */
+    private final AtomicLongArray unpinStamps;
+    /**
+     * least frequency in the top when it is full, an id must exceed it to enter
+     */
+    private volatile int threshold;
+    private volatile int resets;
+
+    public HotKeys(int topN, long revalidateMillis) {
+        if (topN <= 0) throw new IllegalArgumentException();
+        this.topN = topN;
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+        this.sketch = new FrequencySketch<>(Math.max(1024, topN * 256));
+        this.unpinStamps = new AtomicLongArray(Integer.highestOneBit(Math.max(64, topN * 4) - 1) << 1);
+    }
+
+    /**
+     * Records the reads of the ids, serves the pinned values and loads the rest.
+     *
+     * @param loader        reads the cached values of ids from the storage
+     * @param versionLoader reads the versions of ids from the storage, to revalidate the pinned values
+     * @return map id to its cached value
+     */
+    public Map<ID, CacheValue> get(Collection<ID> ids, Function<Collection<ID>, Map<ID, CacheValue>> loader,
+                                   Function<Collection<ID>, Map<ID, Integer>> versionLoader) {
+        Lookup lookup = new Lookup(ids);
+        if (lookup.revalidating != null) {
+            lookup.revalidate(versionLoader.apply(lookup.revalidating));
+        }
+        Collection<ID> rest = lookup.rest();
+        return rest.isEmpty() ? lookup.local() : lookup.complete(rest, loader.apply(rest));
+    }
+
+    /**
+     * Same as {@link #get(Collection, Function, Function)}, but never blocks.
+     */
+    public CompletableFuture<Map<ID, CacheValue>> getAsync(
+            Collection<ID> ids, Function<Collection<ID>, CompletableFuture<Map<ID, CacheValue>>> loader,
+            Function<Collection<ID>, CompletableFuture<Map<ID, Integer>>> versionLoader) {
+        Lookup lookup = new Lookup(ids);
+        CompletableFuture<Void> revalidated = lookup.revalidating == null ? CompletableFuture.completedFuture(null)
+                : versionLoader.apply(lookup.revalidating).thenAccept(lookup::revalidate);
+        return revalidated.thenCompose(v -> {
+            Collection<ID> rest = lookup.rest();
+            return rest.isEmpty() ? CompletableFuture.completedFuture(lookup.local())
+                    : loader.apply(rest).thenApply(loaded -> lookup.complete(rest, loaded));
+        });
+    }
+
+    /**
+     * Unpins the ids after they are written.
+     */
+    public void invalidate(Collection<ID> ids) {
+        long stamp = unpins.incrementAndGet();
+        for (ID id : ids) {
+            unpinStamps.accumulateAndGet(stampIndex(id), stamp, Math::max);
+            replica.remove(id);
+        }
+    }
+
+    /**
+     * @return the hot ids to their estimated read frequencies, the most frequent first
+     */
+    public Map<ID, Integer> hotIds() {
+        List<Map.Entry<ID, Integer>> entries = new ArrayList<>();
+        for (ID id : top) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(id, sketch.frequency(id)));
+        }
+        entries.sort(Map.Entry.<ID, Integer>comparingByValue().reversed());
+        Map<ID, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<ID, Integer> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private void record(ID id) {
+        int frequency = sketch.increment(id);
+        if (resets != sketch.resets()) {
+            // the frequencies are halved
+            admit(null, 0);
+        }
+        if (frequency > threshold && !top.contains(id)) {
+            admit(id, frequency);
+        }
+    }
+
+    private synchronized void admit(@Nullable ID id, int frequency) {
+        if (resets != sketch.resets()) {
+            resets = sketch.resets();
+            List<Ranked<ID>> ranked = new ArrayList<>(ranking);
+            ranking.clear();
+            for (Ranked<ID> r : ranked) {
+                r.frequency = sketch.frequency(r.id);
+            }
+            ranking.addAll(ranked);
+        }
+        if (id != null && !top.contains(id)) {
+            if (top.size() < topN) {
+                top.add(id);
+                ranking.add(new Ranked<>(id, frequency));
+            } else if (frequency > leastRanked().frequency) {
+                ID victim = Objects.requireNonNull(ranking.poll()).id;
+                top.remove(victim);
+                replica.remove(victim);
+                top.add(id);
+                ranking.add(new Ranked<>(id, frequency));
+            }
+        }
+        threshold = top.size() < topN ? 0 : leastRanked().frequency;
+    }
+
+    /**
+     * The frequencies only grow between the resets, so the least ranked is re-ranked until its frequency is current.
+     */
+    private Ranked<ID> leastRanked() {
+        Ranked<ID> least = Objects.requireNonNull(ranking.peek());
+        int frequency;
+        while ((frequency = sketch.frequency(least.id)) != least.frequency) {
+            ranking.poll();
+            least.frequency = frequency;
+            ranking.add(least);
+            least = Objects.requireNonNull(ranking.peek());
+        }
+        return least;
+    }
+
+    /**
+     * @param readAt the unpin count when the value was about to be read
+     */
+    private void pin(ID id, @Nullable CacheValue value, long now, long readAt) {
+        if (value == null || value.isNullCache()) {
+            replica.remove(id);
+            return;
+        }
+        Pinned pinned = new Pinned(value, now);
+        replica.put(id, pinned);
+        // checked after the put, an unpin stamps before it removes
+        if (!top.contains(id) || unpinStamps.get(stampIndex(id)) > readAt) {
+            // dropped out of the top or unpinned meanwhile
+            replica.remove(id, pinned);
+        }
+    }
+
+    private int stampIndex(ID id) {
+        int h = id.hashCode();
+        return (h ^ (h >>> 16)) & (unpinStamps.length() - 1);
+    }
+
+    /**
+     * A read of ids, served by the pinned values first.
+     */
+    private class Lookup {
+        final Collection<ID> ids;
+        final long now = System.nanoTime();
+        final long readAt = unpins.get();
+        /**
+         * values served locally, null if none
+         */
+        @Nullable
+        Map<ID, CacheValue> local;
+        /**
+         * pinned ids past the revalidate interval, null if none
+         */
+        @Nullable
+        List<ID> revalidating;
+
+        Lookup(Collection<ID> ids) {
+            this.ids = ids;
+            for (ID id : ids) {
+                record(id);
+                @Nullable
+                Pinned pinned = replica.isEmpty() ? null : replica.get(id);
+                if (pinned == null) {
+                    continue;
+                }
+                if (now - pinned.pinnedAt < revalidateNanos) {
+                    serveLocally(id, pinned.value);
+                } else if (pinned.value.getVersion() != null) {
+                    if (revalidating == null) {
+                        revalidating = new ArrayList<>();
+                    }
+                    revalidating.add(id);
+                }
+            }
+        }
+
+        /**
+         * Pins the values of unchanged versions for another interval, the others are left to be read again.
+         */
+        void revalidate(Map<ID, Integer> versions) {
+            for (ID id : Objects.requireNonNull(revalidating)) {
+                @Nullable
+                Pinned pinned = replica.get(id);
+                if (pinned == null || !Objects.equals(pinned.value.getVersion(), versions.get(id))) {
+                    continue;
+                }
+                // unless unpinned by a write meanwhile
+                if (replica.replace(id, pinned, new Pinned(pinned.value, now))) {
+                    serveLocally(id, pinned.value);
+                }
+            }
+        }
+
+        private void serveLocally(ID id, CacheValue value) {
+            if (local == null) {
+                local = new HashMap<>();
+            }
+            local.put(id, value);
+        }
+
+        Map<ID, CacheValue> local() {
+            return local == null ? Collections.emptyMap() : local;
+        }
+
+        /**
+         * @return the ids not served locally
+         */
+        Collection<ID> rest() {
+            if (local == null) {
+                return ids;
+            }
+            List<ID> rest = new ArrayList<>(Math.max(0, ids.size() - local.size()));
+            for (ID id : ids) {
+                if (!local.containsKey(id)) {
+                    rest.add(id);
+                }
+            }
+            return rest;
+        }
+
+        /**
+         * Pins the loaded values of the hot ids.
+         *
+         * @return the loaded values with the local ones
+         */
+        Map<ID, CacheValue> complete(Collection<ID> rest, Map<ID, CacheValue> loaded) {
+            for (ID id : rest) {
+                if (top.contains(id)) {
+                    pin(id, loaded.get(id), now, readAt);
+                }
+            }
+            if (local == null) {
+                return loaded;
+            }
+            Map<ID, CacheValue> result = new HashMap<>(loaded);
+            result.putAll(local);
+            return result;
+        }
+    }
+
+    private static class Ranked<ID> {
+        final ID id;
+        int frequency;
+
+        Ranked(ID id, int frequency) {
+            this.id = id;
+            this.frequency = frequency;
+        }
+    }
+
+    private static class Pinned {
+        final CacheValue value;
+        final long pinnedAt;
+
+        Pinned(CacheValue value, long pinnedAt) {
+            this.value = value;
+            this.pinnedAt = pinnedAt;
+        }
+    }
+}
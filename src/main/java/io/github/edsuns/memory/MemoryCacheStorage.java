@@ -0,0 +1,233 @@
+package io.github.edsuns.memory;
+
+import io.github.edsuns.AsyncCacheStorage;
+import io.github.edsuns.CacheStorage;
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.util.BoundedCache;
+import io.github.edsuns.util.SimpleCacheValue;
+import io.github.edsuns.util.Versions;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-process {@link CacheStorage} with the same versioned CAS as {@code put_versioned_values.lua}.
+ * <p>
+ * A value and its version are kept in one immutable entry that is replaced by a per-key atomic update,
+ * so the writes of different keys don't contend. Values are kept by reference, don't mutate them once put.
+ * Expired entries are dropped on read, and swept once the writes since the last sweep outnumber the entries.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:55
+ */
+@ParametersAreNonnullByDefault
+public class MemoryCacheStorage implements CacheStorage, AsyncCacheStorage {
+    @Nullable
+    private final ConcurrentMap<String, Entry> map;
+    @Nullable
+    private final BoundedCache<String, Entry> bounded;
+    private final ConcurrentMap<String, Long> timestamps = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> checkpoints = new ConcurrentHashMap<>();
+    private final AtomicLong writes = new AtomicLong();
+
+    public MemoryCacheStorage() {
+        this.map = new ConcurrentHashMap<>();
+        this.bounded = null;
+    }
+
+    /**
+     * @param maximumSize max count of keys, the least recently used keys are evicted with their versions
+     */
+    public MemoryCacheStorage(long maximumSize) {
+        this(maximumSize, Long.MAX_VALUE, v -> 1);
+    }
+
+    /**
+     * @param weigher weight of a cached value, {@code null} value means null cache
+     */
+    public MemoryCacheStorage(long maximumSize, long maximumWeight, ToIntFunction<Object> weigher) {
+        this.map = null;
+        this.bounded = new BoundedCache<>(maximumSize, maximumWeight, e -> weigher.applyAsInt(e.value));
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values) {
+        return put(values, TimeToLive.NEVER);
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values, TimeToLive ttl) {
+        List<String> failedKeys = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, CacheValue> e : values.entrySet()) {
+            CacheValue value = e.getValue();
+            long millis = ttl.nextMillis(value.getValue() == null);
+            boolean[] success = new boolean[1];
+            compute(e.getKey(), (k, entry) -> {
+                Integer version = entry == null || entry.isVersionExpired(now) ? null : entry.version;
+                if (!Objects.equals(version, value.getVersion())) {
+                    return entry;
+                }
+                success[0] = true;
+                // the version outlives its value, so the counter never restarts under a live value
+                return new Entry(value.getValue(), Versions.next(version),
+                        millis > 0 ? now + millis : 0, millis > 0 ? now + millis * 2 : 0);
+            });
+            if (!success[0]) {
+                failedKeys.add(e.getKey());
+            }
+        }
+        if (writes.addAndGet(values.size()) > Math.max(size(), 1024)) {
+            writes.set(0);
+            cleanUp();
+        }
+        return failedKeys;
+    }
+
+    @Override
+    public List<CacheValue> get(Collection<String> keys) {
+        List<CacheValue> result = new ArrayList<>(keys.size());
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            Entry entry = map != null ? map.get(key) : Objects.requireNonNull(bounded).get(key);
+            SimpleCacheValue cached = new SimpleCacheValue();
+            if (entry != null && entry.isVersionExpired(now)) {
+                remove(key, entry);
+                entry = null;
+            }
+            boolean hasValue = entry != null && !entry.isValueExpired(now);
+            if (entry != null) {
+                cached.setVersion(entry.version);
+            }
+            if (hasValue) {
+                cached.setValue(entry.value);
+                if (entry.valueExpireAt > 0) {
+                    cached.setTtlMillis(entry.valueExpireAt - now);
+                }
+            }
+            cached.setNullCache(!hasValue);
+            result.add(cached);
+        }
+        return result;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) {
+        for (String key : keys) {
+            if (map != null) {
+                map.remove(key);
+            } else {
+                Objects.requireNonNull(bounded).remove(key);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<String>> putAsync(Map<String, CacheValue> values, TimeToLive ttl) {
+        return CompletableFuture.completedFuture(put(values, ttl));
+    }
+
+    @Override
+    public CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys) {
+        return CompletableFuture.completedFuture(get(keys));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Collection<String> keys) {
+        delete(keys);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void saveTimestampMillis(String key, long timeMillis) {
+        timestamps.put(key, timeMillis);
+    }
+
+    @Override
+    public long getTimestampMillis(String key) {
+        return timestamps.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public void saveCheckpoint(String key, @Nullable String checkpoint) {
+        if (checkpoint == null) {
+            checkpoints.remove(key);
+        } else {
+            checkpoints.put(key, checkpoint);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getCheckpoint(String key) {
+        return checkpoints.get(key);
+    }
+
+    /**
+     * Removes the entries whose versions are expired.
+     */
+    public void cleanUp() {
+        // the bounded cache evicts by itself, its expired entries are dropped on read
+        if (map != null) {
+            long now = System.currentTimeMillis();
+            map.values().removeIf(entry -> entry.isVersionExpired(now));
+        }
+    }
+
+    public int size() {
+        return map != null ? map.size() : Objects.requireNonNull(bounded).size();
+    }
+
+    private void compute(String key, BiFunction<String, Entry, Entry> remapping) {
+        if (map != null) {
+            map.compute(key, remapping);
+        } else {
+            Objects.requireNonNull(bounded).compute(key, remapping);
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (map != null) {
+            map.remove(key, entry);
+        } else {
+            Objects.requireNonNull(bounded).removeIf(key, e -> e == entry);
+        }
+    }
+
+    private static class Entry {
+        /**
+         * null means null cache
+         */
+        @Nullable
+        final Object value;
+        final int version;
+        /**
+         * 0 means never expire
+         */
+        final long valueExpireAt;
+        final long versionExpireAt;
+
+        Entry(@Nullable Object value, int version, long valueExpireAt, long versionExpireAt) {
+            this.value = value;
+            this.version = version;
+            this.valueExpireAt = valueExpireAt;
+            this.versionExpireAt = versionExpireAt;
+        }
+
+        boolean isValueExpired(long now) {
+            return valueExpireAt > 0 && valueExpireAt <= now;
+        }
+
+        boolean isVersionExpired(long now) {
+            return versionExpireAt > 0 && versionExpireAt <= now;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.edsuns.metrics;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Listener of the cache events, called on the hot path with primitive arguments only,
+ * so an implementation that doesn't allocate keeps the recording allocation-free.
+ * <p>
+ * The name is the entity name of a cache manager, the name of a storage, or the name of a single-flight.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:30
+ */
+@ParametersAreNonnullByDefault
+public interface CacheMetrics {
+    CacheMetrics NOOP = new CacheMetrics() {
+    };
+
+    /**
+     * @param nanos     latency of the stage
+     * @param batchSize count of ids or keys handled by the stage
+     */
+    default void recordStage(String name, Stage stage, long nanos, int batchSize) {
+    }
+
+    /**
+     * @param hits     cached values
+     * @param nullHits cached null values
+     * @param misses   ids to load from the database
+     */
+    default void recordGets(String name, int hits, int nullHits, int misses) {
+    }
+
+    /**
+     * @param conflicts keys failed by the versioned CAS of a put
+     */
+    default void recordConflicts(String name, int conflicts) {
+    }
+
+    /**
+     * @param owned  keys called by the caller itself
+     * @param joined keys joined the in-flight calls of others
+     */
+    default void recordSingleFlight(String name, int owned, int joined) {
+    }
+
+    /**
+     * @param dropped invalidations deferred by a storage outage and dropped over the max, left to their ttl
+     */
+    default void recordDroppedInvalidations(String name, int dropped) {
+    }
+}
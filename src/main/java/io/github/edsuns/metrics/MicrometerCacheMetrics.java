@@ -0,0 +1,114 @@
+package io.github.edsuns.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheMetrics} on Micrometer.
+ * <p>
+ * The meters of a name are registered on its first record, later records only look them up.
+ * <ul>
+ *     <li>{@code cashe.stage} timer and {@code cashe.batch.size} summary tagged by name and stage</li>
+ *     <li>{@code cashe.gets} counter tagged by name and result of hit, null_hit or miss</li>
+ *     <li>{@code cashe.conflicts} counter tagged by name</li>
+ *     <li>{@code cashe.single.flight} counter tagged by name and role of owned or joined</li>
+ *     <li>{@code cashe.invalidations.dropped} counter tagged by name</li>
+ * </ul>
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:40
+ */
+@ParametersAreNonnullByDefault
+public class MicrometerCacheMetrics implements CacheMetrics {
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public MicrometerCacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordStage(String name, Stage stage, long nanos, int batchSize) {
+        Meters m = meters(name);
+        m.stages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        m.batchSizes[stage.ordinal()].record(batchSize);
+    }
+
+    @Override
+    public void recordGets(String name, int hits, int nullHits, int misses) {
+        Meters m = meters(name);
+        increment(m.hits, hits);
+        increment(m.nullHits, nullHits);
+        increment(m.misses, misses);
+    }
+
+    @Override
+    public void recordConflicts(String name, int conflicts) {
+        increment(meters(name).conflicts, conflicts);
+    }
+
+    @Override
+    public void recordSingleFlight(String name, int owned, int joined) {
+        Meters m = meters(name);
+        increment(m.owned, owned);
+        increment(m.joined, joined);
+    }
+
+    @Override
+    public void recordDroppedInvalidations(String name, int dropped) {
+        increment(meters(name).droppedInvalidations, dropped);
+    }
+
+    private Meters meters(String name) {
+        Meters m = meters.get(name);
+        if (m == null) {
+            m = meters.computeIfAbsent(name, n -> new Meters(registry, n));
+        }
+        return m;
+    }
+
+    private static void increment(Counter counter, int amount) {
+        if (amount > 0) {
+            counter.increment(amount);
+        }
+    }
+
+    private static class Meters {
+        final Timer[] stages = new Timer[Stage.values().length];
+        final DistributionSummary[] batchSizes = new DistributionSummary[Stage.values().length];
+        final Counter hits;
+        final Counter nullHits;
+        final Counter misses;
+        final Counter conflicts;
+        final Counter owned;
+        final Counter joined;
+        final Counter droppedInvalidations;
+
+        Meters(MeterRegistry registry, String name) {
+            for (Stage stage : Stage.values()) {
+                stages[stage.ordinal()] = Timer.builder("cashe.stage")
+                        .tag("name", name).tag("stage", stage.tag())
+                        .publishPercentileHistogram()
+                        .register(registry);
+                batchSizes[stage.ordinal()] = DistributionSummary.builder("cashe.batch.size")
+                        .tag("name", name).tag("stage", stage.tag())
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+            hits = Counter.builder("cashe.gets").tag("name", name).tag("result", "hit").register(registry);
+            nullHits = Counter.builder("cashe.gets").tag("name", name).tag("result", "null_hit").register(registry);
+            misses = Counter.builder("cashe.gets").tag("name", name).tag("result", "miss").register(registry);
+            conflicts = Counter.builder("cashe.conflicts").tag("name", name).register(registry);
+            owned = Counter.builder("cashe.single.flight").tag("name", name).tag("role", "owned").register(registry);
+            joined = Counter.builder("cashe.single.flight").tag("name", name).tag("role", "joined").register(registry);
+            droppedInvalidations = Counter.builder("cashe.invalidations.dropped").tag("name", name).register(registry);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.edsuns.metrics;
+
+import java.util.Locale;
+
+/**
+ * Timed stages of the cache operations.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:32
+ */
+public enum Stage {
+    GET_BY_IDS,
+    UPDATE_BY_IDS,
+    SET_NULLS,
+    REFRESH_UPDATED,
+    REFRESH_ALL,
+    /**
+     * version and value read of a cache manager
+     */
+    CACHE_GET,
+    /**
+     * version only read of a cache manager, begins the CAS scope of a write
+     */
+    CACHE_GET_VERSIONS,
+    CACHE_PUT,
+    CACHE_DELETE,
+    CACHE_MARK_STALE,
+    DATABASE_LOAD,
+    DATABASE_UPDATE,
+    /**
+     * a script or command of a storage, per slot in cluster mode
+     */
+    STORAGE_GET,
+    STORAGE_GET_VERSIONS,
+    STORAGE_PUT,
+    STORAGE_DELETE,
+    STORAGE_MARK_STALE;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    public String tag() {
+        return tag;
+    }
+}
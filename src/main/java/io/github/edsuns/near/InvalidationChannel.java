@@ -0,0 +1,24 @@
+package io.github.edsuns.near;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts the new versions of written keys to the other service instances.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 10:42
+ */
+@ParametersAreNonnullByDefault
+public interface InvalidationChannel {
+    /**
+     * @param versions map key to its new version, {@code null} version means the key was deleted
+     */
+    void publish(Map<String, Integer> versions);
+
+    /**
+     * @param listener receives the versions published by every instance, including this one
+     */
+    void subscribe(Consumer<Map<String, Integer>> listener);
+}
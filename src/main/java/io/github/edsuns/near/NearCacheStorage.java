@@ -0,0 +1,230 @@
+package io.github.edsuns.near;
+
+import io.github.edsuns.CacheStorage;
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.util.BoundedCache;
+import io.github.edsuns.util.SimpleCacheValue;
+import io.github.edsuns.util.Versions;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-process L1 tier in front of another {@link CacheStorage}.
+ * <p>
+ * Local entries are served without touching the delegate until they are older than the max staleness,
+ * or until an instance that won the CAS publishes a different version of the key.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 10:51
+ */
+@ParametersAreNonnullByDefault
+public class NearCacheStorage implements CacheStorage {
+    private final CacheStorage delegate;
+    private final BoundedCache<String, Entry> local;
+    private final long maxStalenessNanos;
+    @Nullable
+    private final InvalidationChannel channel;
+
+    public NearCacheStorage(CacheStorage delegate, long maximumSize, long maxStalenessMillis,
+                            @Nullable InvalidationChannel channel) {
+        this(delegate, maximumSize, Long.MAX_VALUE, v -> 1, maxStalenessMillis, channel);
+    }
+
+    /**
+     * @param weigher weight of a cached value, {@code null} value means null cache
+     */
+    public NearCacheStorage(CacheStorage delegate, long maximumSize, long maximumWeight,
+                            ToIntFunction<Object> weigher, long maxStalenessMillis,
+                            @Nullable InvalidationChannel channel) {
+        this.delegate = delegate;
+        this.local = new BoundedCache<>(maximumSize, maximumWeight, e -> weigher.applyAsInt(e.value.getValue()));
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.channel = channel;
+        if (channel != null) {
+            channel.subscribe(this::invalidate);
+        }
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values) {
+        return put(values, TimeToLive.NEVER);
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values, TimeToLive ttl) {
+        return putLocal(values, delegate.put(values, ttl));
+    }
+
+    @Override
+    public List<String> putAll(Map<TimeToLive, Map<String, CacheValue>> batches) {
+        List<String> failedKeys = delegate.putAll(batches);
+        Map<String, CacheValue> values = new HashMap<>();
+        batches.values().forEach(values::putAll);
+        return putLocal(values, failedKeys);
+    }
+
+    /**
+     * Keeps the put values locally, and publishes their versions.
+     */
+    private List<String> putLocal(Map<String, CacheValue> values, List<String> failedKeys) {
+        Set<String> failed = failedKeys.isEmpty() ? Collections.emptySet() : new HashSet<>(failedKeys);
+        Map<String, Integer> versions = new HashMap<>((int) (values.size() / .75 + 1));
+        long now = System.nanoTime();
+        for (Map.Entry<String, CacheValue> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (failed.contains(key)) {
+                local.remove(key);
+                continue;
+            }
+            Integer version = Versions.next(entry.getValue().getVersion());
+            SimpleCacheValue cached = new SimpleCacheValue(version, entry.getValue().getValue());
+            cached.setNullCache(false);
+            local.put(key, new Entry(cached, now));
+            versions.put(key, version);
+        }
+        if (channel != null && !versions.isEmpty()) {
+            channel.publish(versions);
+        }
+        return failedKeys;
+    }
+
+    /**
+     * The versions of a CAS are read from the delegate, a local copy may be stale.
+     */
+    @Override
+    public List<Integer> getVersions(Collection<String> keys) {
+        return delegate.getVersions(keys);
+    }
+
+    @Override
+    public List<CacheValue> get(Collection<String> keys) {
+        return get(keys, false);
+    }
+
+    @Override
+    public List<CacheValue> get(Collection<String> keys, boolean withTtl) {
+        return get(keys, missedKeys -> delegate.get(missedKeys, withTtl));
+    }
+
+    /**
+     * The leases are taken on the local misses.
+     */
+    @Override
+    public List<CacheValue> getAndLease(Collection<String> keys, long leaseMillis, boolean withTtl) {
+        return get(keys, missedKeys -> delegate.getAndLease(missedKeys, leaseMillis, withTtl));
+    }
+
+    @Override
+    public void releaseLeases(Map<String, String> leases) {
+        delegate.releaseLeases(leases);
+    }
+
+    private List<CacheValue> get(Collection<String> keys, Function<List<String>, List<CacheValue>> loader) {
+        List<CacheValue> result = new ArrayList<>(keys.size());
+        List<String> missedKeys = null;
+        List<Integer> missedIndexes = null;
+        long now = System.nanoTime();
+        for (String key : keys) {
+            @Nullable
+            Entry entry = local.get(key);
+            if (entry != null && now - entry.loadedAt < maxStalenessNanos) {
+                result.add(entry.value);
+                continue;
+            }
+            if (missedKeys == null) {
+                missedKeys = new ArrayList<>();
+                missedIndexes = new ArrayList<>();
+            }
+            missedKeys.add(key);
+            missedIndexes.add(result.size());
+            result.add(null);
+        }
+        if (missedKeys != null) {
+            Iterator<CacheValue> it = loader.apply(missedKeys).iterator();
+            for (int i = 0; i < missedKeys.size() && it.hasNext(); i++) {
+                CacheValue value = it.next();
+                result.set(missedIndexes.get(i), value);
+                // absent keys are about to be filled and stale values refreshed, don't hold them locally
+                if (value != null && !value.isNullCache() && !value.isStale()) {
+                    local.put(missedKeys.get(i), new Entry(value, now));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) {
+        delegate.delete(keys);
+        invalidateLocal(keys);
+    }
+
+    @Override
+    public void markStale(Collection<String> keys, long maxStaleMillis) {
+        delegate.markStale(keys, maxStaleMillis);
+        // the stale values are read from the delegate, where the refreshes put
+        invalidateLocal(keys);
+    }
+
+    private void invalidateLocal(Collection<String> keys) {
+        Map<String, Integer> versions = new HashMap<>((int) (keys.size() / .75 + 1));
+        for (String key : keys) {
+            local.remove(key);
+            versions.put(key, null);
+        }
+        if (channel != null && !versions.isEmpty()) {
+            channel.publish(versions);
+        }
+    }
+
+    @Override
+    public void saveTimestampMillis(String key, long timeMillis) {
+        delegate.saveTimestampMillis(key, timeMillis);
+    }
+
+    @Override
+    public long getTimestampMillis(String key) {
+        return delegate.getTimestampMillis(key);
+    }
+
+    @Override
+    public void saveCheckpoint(String key, @Nullable String checkpoint) {
+        delegate.saveCheckpoint(key, checkpoint);
+    }
+
+    @Nullable
+    @Override
+    public String getCheckpoint(String key) {
+        return delegate.getCheckpoint(key);
+    }
+
+    /**
+     * Drops the local entries whose version differs from the published one.
+     */
+    public void invalidate(Map<String, Integer> versions) {
+        for (Map.Entry<String, Integer> entry : versions.entrySet()) {
+            Integer version = entry.getValue();
+            local.removeIf(entry.getKey(), e -> version == null || !version.equals(e.value.getVersion()));
+        }
+    }
+
+    public void invalidateAll() {
+        local.clear();
+    }
+
+    private static class Entry {
+        final CacheValue value;
+        final long loadedAt;
+
+        Entry(CacheValue value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -47,6 +47,38 @@ public class ArrayResultTypeScriptExecutor<K> extends DefaultScriptExecutor<K> {
         });
     }
 
+    /**
+     * Executes the script with keys already encoded, the result is deserialized by the value serializer.
+     */
+    public <T> T execute(final RedisScript<T> script, final byte[][] keys, final byte[]... args) {
+        return template.execute((RedisCallback<T>) connection -> execute(connection, script, keys, args));
+    }
+
+    /**
+     * Executes the script on the connection, the result is null if the connection is pipelined.
+     *
+     * @see #deserialize(RedisScript, Object)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final RedisConnection connection, final RedisScript<T> script, final byte[][] keys, final byte[]... args) {
+        final byte[][] keysAndArgs = new byte[keys.length + args.length][];
+        System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+        System.arraycopy(args, 0, keysAndArgs, keys.length, args.length);
+        return eval(connection, script, fromJavaType(script.getResultType()), keys.length, keysAndArgs,
+                (RedisSerializer<T>) template.getValueSerializer());
+    }
+
+    /**
+     * Deserializes a raw result of the script, e.g. returned by a pipeline, by the value serializer.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(RedisScript<T> script, @Nullable Object result) {
+        if (script.getResultType() == null || result == null) {
+            return null;
+        }
+        return deserializeResult((RedisSerializer<T>) template.getValueSerializer(), script.getResultType(), result);
+    }
+
     @Override
     protected <T> T eval(RedisConnection connection, RedisScript<T> script, ReturnType returnType, int numKeys,
                          byte[][] keysAndArgs, RedisSerializer<T> resultSerializer) {
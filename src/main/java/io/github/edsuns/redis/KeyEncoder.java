@@ -0,0 +1,67 @@
+package io.github.edsuns.redis;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes the keys of a batch straight into bytes with the hash tag and the suffix of a layout,
+ * instead of concatenating a string per suffix and encoding it again.
+ * An ASCII key costs a single exact-size array, which the driver holds until the command is sent.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:20
+ */
+@ParametersAreNonnullByDefault
+final class KeyEncoder {
+    static final byte[] NO_SUFFIX = new byte[0];
+
+    private final boolean hashTag;
+
+    KeyEncoder(boolean hashTag) {
+        this.hashTag = hashTag;
+    }
+
+    static byte[] suffix(String suffix) {
+        return suffix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] encode(String key, byte[] suffix) {
+        int length = key.length();
+        int tag = hashTag ? 1 : 0;
+        byte[] bytes = new byte[length + tag * 2 + suffix.length];
+        if (hashTag) {
+            bytes[0] = '{';
+        }
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                return encodeUtf8(key, suffix);
+            }
+            bytes[i + tag] = (byte) c;
+        }
+        if (hashTag) {
+            bytes[length + 1] = '}';
+        }
+        System.arraycopy(suffix, 0, bytes, length + tag * 2, suffix.length);
+        return bytes;
+    }
+
+    /**
+     * Encodes the keys at indexes into result from offset.
+     */
+    void encode(List<String> keys, int[] indexes, byte[] suffix, byte[][] result, int offset) {
+        for (int i = 0; i < indexes.length; i++) {
+            result[offset + i] = encode(keys.get(indexes[i]), suffix);
+        }
+    }
+
+    private byte[] encodeUtf8(String key, byte[] suffix) {
+        String tagged = hashTag ? "{" + key + "}" : key;
+        byte[] bytes = tagged.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[bytes.length + suffix.length];
+        System.arraycopy(bytes, 0, result, 0, bytes.length);
+        System.arraycopy(suffix, 0, result, bytes.length, suffix.length);
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.edsuns.redis;
+
+import io.github.edsuns.AsyncCacheStorage;
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.metrics.Stage;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link RedisCacheStorage} that also serves {@link AsyncCacheStorage} by the async commands of Lettuce,
+ * so no thread is blocked while waiting for Redis.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 16:48
+ */
+@ParametersAreNonnullByDefault
+public class LettuceCacheStorage extends RedisCacheStorage implements AsyncCacheStorage, AutoCloseable {
+    private final RedisConnection connection;
+    private final RedisClusterAsyncCommands<byte[], byte[]> commands;
+
+    public LettuceCacheStorage(LettuceConnectionFactory connectionFactory) {
+        this(connectionFactory, new RedisCacheStorageConfig());
+    }
+
+    @SuppressWarnings("unchecked")
+    public LettuceCacheStorage(LettuceConnectionFactory connectionFactory, RedisCacheStorageConfig config) {
+        super(connectionFactory, config);
+        // the native connection is shared by default, keep the wrapper for the lifetime of the storage
+        this.connection = connectionFactory.getConnection();
+        this.commands = (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> putAsync(Map<String, CacheValue> values, TimeToLive ttl) {
+        List<String> keys = new ArrayList<>(values.keySet());
+        List<CacheValue> cacheValues = new ArrayList<>(values.values());
+        List<TimeToLive> ttls = Collections.nCopies(keys.size(), ttl);
+        List<Integer> failedIndexes = new ArrayList<>();
+        List<int[]> groups = batchGroups(keys);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int[] indexes = groups.get(i);
+            long start = System.nanoTime();
+            futures[i] = this.<List<Long>>evalAsync(luaPutVersionedValues,
+                            putKeys(keys, indexes), putArgs(cacheValues, indexes, ttls))
+                    .thenAccept(failed -> {
+                        metrics.recordStage(name, Stage.STORAGE_PUT, System.nanoTime() - start, indexes.length);
+                        collectFailed(failedIndexes, indexes, failed);
+                    });
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> failedKeys(keys, failedIndexes));
+    }
+
+    @Override
+    public CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys) {
+        return getAsync(keys, false);
+    }
+
+    @Override
+    public CompletableFuture<List<CacheValue>> getAsync(Collection<String> keys, boolean withTtl) {
+        List<String> keyList = new ArrayList<>(keys);
+        CacheValue[] result = new CacheValue[keyList.size()];
+        List<int[]> groups = batchGroups(keyList);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int[] indexes = groups.get(i);
+            long start = System.nanoTime();
+            futures[i] = this.<List<List<Object>>>evalAsync(luaGetVersionedValues,
+                            getKeys(keyList, indexes), getArgs(indexes, withTtl))
+                    .thenAccept(values -> {
+                        metrics.recordStage(name, Stage.STORAGE_GET, System.nanoTime() - start, indexes.length);
+                        for (int j = 0; j < values.size() && j < indexes.length; j++) {
+                            List<Object> value = values.get(j);
+                            result[indexes[j]] = toCacheValue(value.get(0), value.get(1), value.size() > 2 ? value.get(2) : null);
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> Arrays.asList(result));
+    }
+
+    @Override
+    public CompletableFuture<List<Integer>> getVersionsAsync(Collection<String> keys) {
+        List<String> keyList = new ArrayList<>(keys);
+        Integer[] result = new Integer[keyList.size()];
+        List<int[]> groups = batchGroups(keyList);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int[] indexes = groups.get(i);
+            long start = System.nanoTime();
+            byte[][] versionKeys = versionKeys(keyList, indexes);
+            CompletableFuture<List<?>> versions = isReadPacked()
+                    ? evalAsync(luaGetPackedVersions, versionKeys, versionArgs(indexes)) : mgetAsync(versionKeys);
+            futures[i] = versions.thenAccept(values -> {
+                metrics.recordStage(name, Stage.STORAGE_GET_VERSIONS, System.nanoTime() - start, indexes.length);
+                for (int j = 0; j < values.size() && j < indexes.length; j++) {
+                    result[indexes[j]] = toVersion(values.get(j));
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> Arrays.asList(result));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        long start = System.nanoTime();
+        List<int[]> groups = batchGroups(keyList);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = commands.del(deleteKeys(keyList, groups.get(i))).toCompletableFuture();
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            metrics.recordStage(name, Stage.STORAGE_DELETE, System.nanoTime() - start, keys.size());
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> markStaleAsync(Collection<String> keys, long maxStaleMillis) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        long start = System.nanoTime();
+        List<int[]> groups = batchGroups(keyList);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int[] indexes = groups.get(i);
+            futures[i] = evalAsync(luaMarkStale, getKeys(keyList, indexes), markStaleArgs(indexes, maxStaleMillis));
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            metrics.recordStage(name, Stage.STORAGE_MARK_STALE, System.nanoTime() - start, keys.size());
+            return null;
+        });
+    }
+
+    private CompletableFuture<List<?>> mgetAsync(byte[][] keys) {
+        return commands.mget(keys).toCompletableFuture().thenApply(values -> {
+            List<Object> result = new ArrayList<>(values.size());
+            values.forEach(value -> result.add(value.getValueOrElse(null)));
+            return result;
+        });
+    }
+
+    private <T> CompletableFuture<T> evalAsync(RedisScript<?> script, byte[][] keys, byte[]... args) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        commands.<T>evalsha(script.getSha1(), ScriptOutputType.MULTI, keys, args).whenComplete((r, e) -> {
+            if (e == null) {
+                result.complete(r);
+            } else if (isNoScript(e)) {
+                commands.<T>eval(script.getScriptAsString(), ScriptOutputType.MULTI, keys, args)
+                        .whenComplete((r1, e1) -> {
+                            if (e1 == null) {
+                                result.complete(r1);
+                            } else {
+                                result.completeExceptionally(e1);
+                            }
+                        });
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        Throwable current = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return current instanceof RedisNoScriptException
+                || current.getMessage() != null && current.getMessage().startsWith("NOSCRIPT");
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+}
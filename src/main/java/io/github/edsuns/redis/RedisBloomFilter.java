@@ -0,0 +1,113 @@
+package io.github.edsuns.redis;
+
+import io.github.edsuns.bloom.BloomHash;
+import io.github.edsuns.bloom.ExistenceFilter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+
+import static io.github.edsuns.util.IOUtil.getResourceAsString;
+
+/**
+ * {@link ExistenceFilter} on a Redis bitmap shared by all instances, sized for the expected ids.
+ * <p>
+ * The filter and its rebuild are tagged by the same hash tag, so the rebuild is renamed over the filter on commit.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:55
+ */
+@ParametersAreNonnullByDefault
+public class RedisBloomFilter<ID> implements ExistenceFilter<ID> {
+    private final StringRedisTemplate redisTemplate;
+    private final String key;
+    private final String buildingKey;
+    private final long bits;
+    private final int hashes;
+
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> luaAbsent;
+    private final RedisScript<Long> luaPut;
+
+    /**
+     * @param name               name of the filter, e.g. the entity name
+     * @param expectedInsertions ids the filter is sized for
+     * @param fpp                false positive probability at the expected ids
+     */
+    public RedisBloomFilter(RedisConnectionFactory connectionFactory, String name,
+                            long expectedInsertions, double fpp) {
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.key = "{" + name + "}:bloom";
+        this.buildingKey = key + ":building";
+        this.bits = BloomHash.optimalBits(expectedInsertions, fpp);
+        if (bits > 1L << 32) throw new IllegalArgumentException("bitmap over 512MB");
+        this.hashes = BloomHash.optimalHashes(expectedInsertions, bits);
+        this.luaAbsent = RedisScript.of(getResourceAsString("scripts/bloom_absent.lua"), List.class);
+        this.luaPut = RedisScript.of(getResourceAsString("scripts/bloom_put.lua"), Long.class);
+    }
+
+    @Override
+    public void put(Collection<ID> ids) {
+        put(Arrays.asList(key, buildingKey), ids);
+    }
+
+    @Override
+    public Set<ID> absent(Collection<ID> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<ID> idList = new ArrayList<>(ids);
+        String[] args = new String[1 + idList.size() * hashes];
+        args[0] = String.valueOf(hashes);
+        fillIndexes(idList, args, 1);
+        @SuppressWarnings("unchecked")
+        List<Long> absent = redisTemplate.execute(luaAbsent, Collections.singletonList(key), (Object[]) args);
+        if (absent == null || absent.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<ID> result = new HashSet<>();
+        for (Long i : absent) {
+            result.add(idList.get(i.intValue() - 1));
+        }
+        return result;
+    }
+
+    @Override
+    public Builder<ID> rebuild() {
+        redisTemplate.delete(buildingKey);
+        // allocate the bitmap, so the writes meanwhile go to the rebuild too
+        redisTemplate.opsForValue().setBit(buildingKey, bits - 1, false);
+        return new Builder<ID>() {
+            @Override
+            public void put(Collection<ID> ids) {
+                RedisBloomFilter.this.put(Collections.singletonList(buildingKey), ids);
+            }
+
+            @Override
+            public void commit() {
+                redisTemplate.rename(buildingKey, key);
+            }
+        };
+    }
+
+    private void put(List<String> keys, Collection<ID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String[] args = new String[ids.size() * hashes];
+        fillIndexes(ids, args, 0);
+        redisTemplate.execute(luaPut, keys, (Object[]) args);
+    }
+
+    private void fillIndexes(Collection<ID> ids, String[] args, int offset) {
+        int n = offset;
+        for (ID id : ids) {
+            long hash = BloomHash.hash(id);
+            for (int i = 0; i < hashes; i++) {
+                args[n++] = String.valueOf(BloomHash.index(hash, i, bits));
+            }
+        }
+    }
+}
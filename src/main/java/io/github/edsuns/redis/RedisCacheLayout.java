@@ -0,0 +1,60 @@
+package io.github.edsuns.redis;
+
+/**
+ * How {@link RedisCacheStorage} lays out a value and its version in Redis.
+ * <p>
+ * The split layout keeps them in two keys, {@code key} and {@code key:v}.
+ * The packed layout keeps them in the single key {@code key:p} as {@code version:expireAt:value},
+ * which halves the keyspace and the keys read per batch.
+ * A packed key lives for twice the ttl of its value, so the version outlives the value as in the split layout.
+ * The first read after the value expires trims the entry to its version header, a value expired but never read
+ * stays resident until the key expires, so the packed layout holds up to twice the memory of the live values
+ * when most entries expire unread.
+ * <p>
+ * Migrate a running cluster in steps, each step is rolled out to all instances before the next one:
+ * {@link #SPLIT} to {@link #SPLIT_READ_PACKED} to {@link #PACKED_READ_SPLIT} to {@link #PACKED}.
+ * Writes of a migrating step drop the entry of the other layout, so the two layouts never serve different values.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:12
+ */
+public enum RedisCacheLayout {
+    /**
+     * value key and version key
+     */
+    SPLIT(false, true, false),
+    /**
+     * reads the packed entries before the split ones, writes the split layout
+     */
+    SPLIT_READ_PACKED(true, true, false),
+    /**
+     * reads the packed entries before the split ones, writes the packed layout
+     */
+    PACKED_READ_SPLIT(true, true, true),
+    /**
+     * value and version in a single key
+     */
+    PACKED(true, false, true);
+
+    private final boolean readPacked;
+    private final boolean readSplit;
+    private final boolean writePacked;
+
+    RedisCacheLayout(boolean readPacked, boolean readSplit, boolean writePacked) {
+        this.readPacked = readPacked;
+        this.readSplit = readSplit;
+        this.writePacked = writePacked;
+    }
+
+    boolean isReadPacked() {
+        return readPacked;
+    }
+
+    boolean isReadSplit() {
+        return readSplit;
+    }
+
+    boolean isWritePacked() {
+        return writePacked;
+    }
+}
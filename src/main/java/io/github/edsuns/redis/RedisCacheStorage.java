@@ -1,18 +1,32 @@
 package io.github.edsuns.redis;
 
+import io.github.edsuns.CacheCodec;
 import io.github.edsuns.CacheStorage;
 import io.github.edsuns.CacheValue;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.codec.JsonCacheCodec;
+import io.github.edsuns.metrics.CacheMetrics;
+import io.github.edsuns.metrics.Stage;
+import io.github.edsuns.util.NamedThreadFactory;
 import io.github.edsuns.util.SimpleCacheValue;
-import io.github.edsuns.util.Some;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import static io.github.edsuns.util.IOUtil.getResourceAsString;
 
@@ -22,24 +36,75 @@ import static io.github.edsuns.util.IOUtil.getResourceAsString;
  */
 @ParametersAreNonnullByDefault
 public class RedisCacheStorage implements CacheStorage {
-    private static final String KEY_VERSION = ":v";
+    private static final byte[] KEY_VERSION = KeyEncoder.suffix(":v");
+    private static final byte[] KEY_PACKED = KeyEncoder.suffix(":p");
+    private static final byte[] KEY_LEASE = KeyEncoder.suffix(":l");
+    private static final byte STALE_MARK = 's';
+    private static final byte[] NIL = new byte[0];
+    private static final int SLOT_COUNT = 16384;
+    private static final long SLOT_OWNERS_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final ArrayResultTypeScriptExecutor<String> scriptExecutor;
+    private final KeyEncoder keyEncoder;
+    private final CacheCodec codec;
 
-    private final RedisScript<Object[][]> luaGetVersionedValues;
-    private final RedisScript<String[]> luaPutVersionedValues;
+    final RedisScript<Object[][]> luaGetVersionedValues;
+    final RedisScript<Long[]> luaPutVersionedValues;
+    final RedisScript<Object[]> luaGetPackedVersions;
+    final RedisScript<Long[]> luaMarkStale;
+    final RedisScript<Long> luaReleaseLeases;
+
+    private final boolean clusterMode;
+    private final RedisCacheLayout layout;
+    private final int maxBatchSize;
+    private final Executor executor;
+    final String name;
+    final CacheMetrics metrics;
+    /**
+     * node of every slot, a stale table only costs parallelism since the driver routes every call by its keys
+     */
+    @Nullable
+    private volatile String[] slotOwners;
+    private volatile long slotOwnersLoadedAt;
+    private volatile boolean pipelining = true;
 
     public RedisCacheStorage(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, new RedisCacheStorageConfig());
+    }
+
+    public RedisCacheStorage(RedisConnectionFactory connectionFactory, RedisCacheStorageConfig config) {
         this.redisTemplate = createRedisTemplate(connectionFactory);
-        this.luaGetVersionedValues = RedisScript.of(getResourceAsString("scripts/get_versioned_values.lua"), Object[][].class);
-        this.luaPutVersionedValues = RedisScript.of(getResourceAsString("scripts/put_versioned_values.lua"), String[].class);
+        this.scriptExecutor = new ArrayResultTypeScriptExecutor<>(redisTemplate);
+        this.codec = Optional.ofNullable(config.getCodec()).orElseGet(JsonCacheCodec::new);
+        this.layout = config.getLayout();
+        this.luaGetVersionedValues = RedisScript.of(getResourceAsString(layout.isReadPacked()
+                ? "scripts/get_packed_values.lua" : "scripts/get_versioned_values.lua"), Object[][].class);
+        this.luaPutVersionedValues = RedisScript.of(getResourceAsString(layout.isWritePacked()
+                ? "scripts/put_packed_values.lua" : "scripts/put_versioned_values.lua"), Long[].class);
+        this.luaGetPackedVersions = RedisScript.of(getResourceAsString("scripts/get_packed_versions.lua"), Object[].class);
+        this.luaMarkStale = RedisScript.of(getResourceAsString("scripts/mark_stale.lua"), Long[].class);
+        this.luaReleaseLeases = RedisScript.of(getResourceAsString("scripts/release_leases.lua"), Long.class);
+        this.clusterMode = config.isClusterMode();
+        this.keyEncoder = new KeyEncoder(clusterMode);
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.executor = Optional.ofNullable(config.getExecutor()).orElseGet(() -> {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory("cashe-redis"));
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        });
+        this.name = config.getName();
+        this.metrics = config.getMetrics();
     }
 
-    private static RedisTemplate<String, Object> createRedisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
+    private static RedisTemplate<String, byte[]> createRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(RedisSerializer.string());
-        template.setValueSerializer(RedisSerializer.json());
+        // values are encoded by the codec
+        template.setValueSerializer(RedisSerializer.byteArray());
         template.setScriptExecutor(new ArrayResultTypeScriptExecutor<>(template));
         template.afterPropertiesSet();
         return template;
@@ -47,75 +112,620 @@ public class RedisCacheStorage implements CacheStorage {
 
     @Override
     public List<String> put(Map<String, CacheValue> values) {
-        Set<Map.Entry<String, CacheValue>> entries = values.entrySet();
-        List<String> keys = Stream.concat(
-                        entries.stream().map(Map.Entry::getKey),
-                        entries.stream().map(x -> version(x.getKey()))
-                )
-                .collect(Collectors.toList());
-
-        Object[] args = new Object[entries.size() * 2];
-        Iterator<Map.Entry<String, CacheValue>> iterator = entries.iterator();
-        for (int i = 0; iterator.hasNext(); i++) {
-            CacheValue next = iterator.next().getValue();
-            args[i] = new Some(next.getValue());
-            args[i + entries.size()] = next.getVersion();
-        }
-
-        String[] result = redisTemplate.execute(luaPutVersionedValues, keys, args);
-        if (result == null) {
+        return put(values, TimeToLive.NEVER);
+    }
+
+    @Override
+    public List<String> put(Map<String, CacheValue> values, TimeToLive ttl) {
+        return put(new ArrayList<>(values.keySet()), new ArrayList<>(values.values()),
+                Collections.nCopies(values.size(), ttl));
+    }
+
+    /**
+     * Puts the batches together, the values of all entities in a slot are put by one script.
+     */
+    @Override
+    public List<String> putAll(Map<TimeToLive, Map<String, CacheValue>> batches) {
+        List<String> keys = new ArrayList<>();
+        List<CacheValue> cacheValues = new ArrayList<>();
+        List<TimeToLive> ttls = new ArrayList<>();
+        batches.forEach((ttl, values) -> {
+            keys.addAll(values.keySet());
+            cacheValues.addAll(values.values());
+            ttls.addAll(Collections.nCopies(values.size(), ttl));
+        });
+        return put(keys, cacheValues, ttls);
+    }
+
+    /**
+     * @param ttls ttl of every value
+     */
+    private List<String> put(List<String> keys, List<CacheValue> cacheValues, List<TimeToLive> ttls) {
+        List<Integer> failedIndexes = new ArrayList<>();
+        forEachGroup(keys, script(luaPutVersionedValues, indexes -> putKeys(keys, indexes),
+                indexes -> putArgs(cacheValues, indexes, ttls)), Stage.STORAGE_PUT, (indexes, failed) -> {
+            if (failed != null) {
+                collectFailed(failedIndexes, indexes, Arrays.asList(failed));
+            }
+        });
+        return failedKeys(keys, failedIndexes);
+    }
+
+    byte[][] putArgs(List<CacheValue> values, int[] indexes, List<TimeToLive> ttls) {
+        int size = indexes.length;
+        byte[][] args = new byte[size * 3][];
+        for (int i = 0; i < size; i++) {
+            CacheValue value = values.get(indexes[i]);
+            args[i] = codec.encode(value.getValue());
+            args[i + size] = value.getVersion() == null ? NIL : toBytes(value.getVersion());
+            args[i + size * 2] = toBytes(ttls.get(indexes[i]).nextMillis(value.getValue() == null));
+        }
+        return args;
+    }
+
+    /**
+     * @param failed 1-based indexes in the group returned by the put script
+     */
+    static void collectFailed(List<Integer> failedIndexes, int[] indexes, List<Long> failed) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        synchronized (failedIndexes) {
+            for (Long i : failed) {
+                failedIndexes.add(indexes[i.intValue() - 1]);
+            }
+        }
+    }
+
+    static List<String> failedKeys(List<String> keys, List<Integer> failedIndexes) {
+        if (failedIndexes.isEmpty()) {
             return Collections.emptyList();
         }
-        return Arrays.asList(result);
+        Collections.sort(failedIndexes);
+        List<String> failedKeys = new ArrayList<>(failedIndexes.size());
+        for (int i : failedIndexes) {
+            failedKeys.add(keys.get(i));
+        }
+        return failedKeys;
     }
 
     @Override
     public List<CacheValue> get(Collection<String> keys) {
-        Object[][] result = redisTemplate.execute(luaGetVersionedValues, keysAndVersions(keys));
-        if (result == null) {
-            return Collections.emptyList();
+        return get(keys, false, 0);
+    }
+
+    /**
+     * The ttls are read by PTTL only if asked, a packed entry carries its expiry anyway.
+     */
+    @Override
+    public List<CacheValue> get(Collection<String> keys, boolean withTtl) {
+        return get(keys, withTtl, 0);
+    }
+
+    /**
+     * The lease is taken by the get script, in the same round trip, and holds a random token of the call.
+     */
+    @Override
+    public List<CacheValue> getAndLease(Collection<String> keys, long leaseMillis, boolean withTtl) {
+        if (leaseMillis <= 0) throw new IllegalArgumentException();
+        return get(keys, withTtl, leaseMillis);
+    }
+
+    private List<CacheValue> get(Collection<String> keys, boolean withTtl, long leaseMillis) {
+        List<String> keyList = keys instanceof List ? (List<String>) keys : new ArrayList<>(keys);
+        CacheValue[] result = new CacheValue[keyList.size()];
+        String token = leaseMillis > 0 ? newLeaseToken() : null;
+        GroupCommand<Object[][]> command = token != null
+                ? script(luaGetVersionedValues, indexes -> leaseKeys(keyList, indexes), indexes -> leaseArgs(indexes, withTtl, leaseMillis, token))
+                : script(luaGetVersionedValues, indexes -> getKeys(keyList, indexes), indexes -> getArgs(indexes, withTtl));
+        forEachGroup(keyList, command, Stage.STORAGE_GET, (indexes, values) -> {
+            if (values == null) {
+                return;
+            }
+            for (int i = 0; i < values.length && i < indexes.length; i++) {
+                SimpleCacheValue value = toCacheValue(values[i][0], values[i][1], values[i].length > 2 ? values[i][2] : null);
+                if (values[i].length > 3) {
+                    boolean leased = Long.valueOf(1).equals(values[i][3]);
+                    value.setLoading(!leased);
+                    value.setLeaseToken(leased ? token : null);
+                }
+                result[indexes[i]] = value;
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * The leases are released by a compare-and-delete script, a lease holding another token is kept.
+     */
+    @Override
+    public void releaseLeases(Map<String, String> leases) {
+        List<String> keyList = new ArrayList<>(leases.keySet());
+        forEachGroup(keyList, script(luaReleaseLeases, indexes -> encodeKeys(keyList, indexes, KEY_LEASE), indexes -> {
+            byte[][] tokens = new byte[indexes.length][];
+            for (int i = 0; i < indexes.length; i++) {
+                tokens[i] = leases.get(keyList.get(indexes[i])).getBytes(StandardCharsets.US_ASCII);
+            }
+            return tokens;
+        }), null, null);
+    }
+
+    /**
+     * @return 128 random bits in hex, unique to the call among the callers that lease the same keys
+     */
+    private static String newLeaseToken() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    }
+
+    /**
+     * Reads the version keys by MGET, or the version headers of the packed entries by a script.
+     */
+    @Override
+    public List<Integer> getVersions(Collection<String> keys) {
+        List<String> keyList = keys instanceof List ? (List<String>) keys : new ArrayList<>(keys);
+        Integer[] result = new Integer[keyList.size()];
+        GroupCommand<? extends List<?>> command = layout.isReadPacked()
+                ? script(luaGetPackedVersions, indexes -> versionKeys(keyList, indexes), this::versionArgs)
+                .map(packed -> packed == null ? null : Arrays.asList(packed))
+                : (connection, indexes) -> connection.stringCommands().mGet(versionKeys(keyList, indexes));
+        forEachGroup(keyList, command, Stage.STORAGE_GET_VERSIONS, (indexes, versions) -> {
+            if (versions == null) {
+                return;
+            }
+            for (int i = 0; i < versions.size() && i < indexes.length; i++) {
+                result[indexes[i]] = toVersion(versions.get(i));
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * @param encodedVersion digits, suffixed by 's' if the value is stale
+     */
+    @Nullable
+    static Integer toVersion(@Nullable Object encodedVersion) {
+        if (encodedVersion == null) {
+            return null;
         }
-        return Arrays.stream(result).map(x -> {
-                    Some some = (Some) x[0];
-                    SimpleCacheValue cached = new SimpleCacheValue();
-                    if (some != null) {
-                        cached.setValue(some.getValue());
-                    }
-                    Object version = x[1];
-                    if (version != null) {
-                        cached.setVersion((int) version);
-                    }
-                    cached.setNullCache(some == null);
-                    return cached;
-                })
-                .collect(Collectors.toList());
+        byte[] bytes = (byte[]) encodedVersion;
+        int version = 0;
+        for (int i = 0; i < bytes.length && bytes[i] != STALE_MARK; i++) {
+            version = version * 10 + (bytes[i] - '0');
+        }
+        return version;
+    }
+
+    static boolean isStale(@Nullable Object encodedVersion) {
+        byte[] bytes = (byte[]) encodedVersion;
+        return bytes != null && bytes.length > 0 && bytes[bytes.length - 1] == STALE_MARK;
+    }
+
+    /**
+     * @param ttl remaining ttl of the value in millis
+     */
+    SimpleCacheValue toCacheValue(@Nullable Object encodedValue, @Nullable Object encodedVersion, @Nullable Object ttl) {
+        byte[] value = (byte[]) encodedValue;
+        SimpleCacheValue cached = new SimpleCacheValue();
+        if (value != null) {
+            cached.setValue(codec.decode(value));
+        }
+        cached.setVersion(toVersion(encodedVersion));
+        cached.setNullCache(value == null);
+        cached.setStale(value != null && isStale(encodedVersion));
+        if (ttl instanceof Long) {
+            cached.setTtlMillis((Long) ttl);
+        }
+        return cached;
     }
 
     @Override
     public void delete(Collection<String> keys) {
-        redisTemplate.delete(keysAndVersions(keys));
+        long start = System.nanoTime();
+        List<String> keyList = keys instanceof List ? (List<String>) keys : new ArrayList<>(keys);
+        forEachGroup(keyList, (connection, indexes) -> connection.keyCommands().del(deleteKeys(keyList, indexes)),
+                null, null);
+        metrics.recordStage(name, Stage.STORAGE_DELETE, System.nanoTime() - start, keys.size());
     }
 
-    private static List<String> keysAndVersions(Collection<String> keys) {
-        return Stream.concat(keys.stream(), keys.stream().map(RedisCacheStorage::version))
-                .collect(Collectors.toList());
+    @Override
+    public void markStale(Collection<String> keys, long maxStaleMillis) {
+        long start = System.nanoTime();
+        List<String> keyList = keys instanceof List ? (List<String>) keys : new ArrayList<>(keys);
+        forEachGroup(keyList, script(luaMarkStale, indexes -> getKeys(keyList, indexes),
+                indexes -> markStaleArgs(indexes, maxStaleMillis)), null, null);
+        metrics.recordStage(name, Stage.STORAGE_MARK_STALE, System.nanoTime() - start, keys.size());
     }
 
-    private static String version(String key) {
-        return key + KEY_VERSION;
+    byte[][] markStaleArgs(int[] indexes, long maxStaleMillis) {
+        return new byte[][]{toBytes(indexes.length), toBytes(maxStaleMillis)};
     }
 
+    /**
+     * @return the keys of both layouts while migrating
+     */
+    byte[][] deleteKeys(List<String> keys, int[] indexes) {
+        return encodeKeys(keys, indexes, layout.isReadPacked() ? KEY_PACKED : null,
+                layout.isReadSplit() ? KeyEncoder.NO_SUFFIX : null, layout.isReadSplit() ? KEY_VERSION : null);
+    }
+
+    /**
+     * Runs the command per group of keys that a script can access together.
+     * The lanes of {@link #batchLanes(List)} run in parallel, the caller runs the first one.
+     *
+     * @param stage   recorded per group if not null
+     * @param handler takes the indexes of a group in keys and the result of its command
+     */
+    private <T> void forEachGroup(List<String> keys, GroupCommand<T> command,
+                                  @Nullable Stage stage, @Nullable BiConsumer<int[], T> handler) {
+        List<List<int[]>> lanes = batchLanes(keys);
+        if (lanes.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(lanes.size() - 1);
+        for (List<int[]> lane : lanes.subList(1, lanes.size())) {
+            futures.add(CompletableFuture.runAsync(() -> runLane(lane, command, stage, handler), executor));
+        }
+        runLane(lanes.get(0), command, stage, handler);
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Pipelines the commands of a lane of several groups, so a lane costs about one round trip.
+     */
+    private <T> void runLane(List<int[]> lane, GroupCommand<T> command,
+                             @Nullable Stage stage, @Nullable BiConsumer<int[], T> handler) {
+        if (lane.size() > 1 && pipelining) {
+            try {
+                runPipelined(lane, command, stage, handler);
+                return;
+            } catch (UnsupportedOperationException e) {
+                // e.g. a Jedis cluster connection, which can't pipeline
+                pipelining = false;
+            }
+        }
+        for (int[] indexes : lane) {
+            runAlone(indexes, command, stage, handler);
+        }
+    }
+
+    private <T> void runAlone(int[] indexes, GroupCommand<T> command,
+                              @Nullable Stage stage, @Nullable BiConsumer<int[], T> handler) {
+        long start = System.nanoTime();
+        T result = redisTemplate.execute((RedisCallback<T>) connection -> command.issue(connection, indexes));
+        if (stage != null) {
+            metrics.recordStage(name, stage, System.nanoTime() - start, indexes.length);
+        }
+        if (handler != null) {
+            handler.accept(indexes, result);
+        }
+    }
+
+    private <T> void runPipelined(List<int[]> lane, GroupCommand<T> command,
+                                  @Nullable Stage stage, @Nullable BiConsumer<int[], T> handler) {
+        long start = System.nanoTime();
+        List<Object> results;
+        try {
+            results = pipeline(lane, command);
+        } catch (RedisPipelineException e) {
+            if (!ScriptUtils.exceptionContainsNoScriptError(e)) {
+                throw e;
+            }
+            // the script is not cached on the node, e.g. after a restart, the driver drops the results of all
+            // commands then. a group run alone falls back to EVAL, which caches the script for the rest
+            runAlone(lane.get(0), command, stage, handler);
+            lane = lane.subList(1, lane.size());
+            start = System.nanoTime();
+            results = pipeline(lane, command);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < lane.size(); i++) {
+            Object result = results.get(i);
+            if (result instanceof RuntimeException) {
+                throw (RuntimeException) result;
+            }
+            int[] indexes = lane.get(i);
+            if (stage != null) {
+                metrics.recordStage(name, stage, elapsed, indexes.length);
+            }
+            if (handler != null) {
+                handler.accept(indexes, command.convert(result));
+            }
+        }
+    }
+
+    /**
+     * @return the raw results of the commands, converted by the command
+     */
+    private List<Object> pipeline(List<int[]> lane, GroupCommand<?> command) {
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int[] indexes : lane) {
+                command.issue(connection, indexes);
+            }
+            return null;
+        }, null);
+    }
+
+    /**
+     * @return the groups of {@link #batchGroups(List)} by lane, the commands of a lane are pipelined.
+     * In cluster mode a lane holds the groups of the slots owned by a node, so a batch of keys in many slots
+     * takes a thread and about one round trip per node instead of a round trip per slot. Otherwise a lane per group.
+     */
+    List<List<int[]>> batchLanes(List<String> keys) {
+        List<int[]> groups = batchGroups(keys);
+        if (!clusterMode || groups.size() <= 1) {
+            List<List<int[]>> lanes = new ArrayList<>(groups.size());
+            groups.forEach(group -> lanes.add(Collections.singletonList(group)));
+            return lanes;
+        }
+        @Nullable
+        String[] owners = getSlotOwners();
+        Map<Object, List<int[]>> lanes = new LinkedHashMap<>();
+        for (int[] group : groups) {
+            int slot = ClusterSlotHashUtil.calculateSlot(valueKey(keys.get(group[0])));
+            // a slot of an unknown owner runs in a lane of its own
+            Object owner = owners == null || owners[slot] == null ? slot : owners[slot];
+            lanes.computeIfAbsent(owner, k -> new ArrayList<>()).add(group);
+        }
+        return new ArrayList<>(lanes.values());
+    }
+
+    @Nullable
+    private String[] getSlotOwners() {
+        String[] owners = slotOwners;
+        if (owners == null || System.nanoTime() - slotOwnersLoadedAt > SLOT_OWNERS_TTL_NANOS) {
+            slotOwnersLoadedAt = System.nanoTime();
+            try {
+                slotOwners = owners = loadSlotOwners();
+            } catch (RuntimeException e) {
+                // the previous table, if any, is still good enough to group by
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * @return the master node of every slot, null if the connection is not a cluster connection
+     */
+    @Nullable
+    String[] loadSlotOwners() {
+        return redisTemplate.execute((RedisCallback<String[]>) connection -> {
+            if (!(connection instanceof RedisClusterConnection)) {
+                return null;
+            }
+            String[] owners = new String[SLOT_COUNT];
+            for (RedisClusterNode node : ((RedisClusterConnection) connection).clusterGetNodes()) {
+                if (node.isMaster()) {
+                    for (int slot : node.getSlotRange().getSlotsArray()) {
+                        owners[slot] = node.asString();
+                    }
+                }
+            }
+            return owners;
+        });
+    }
+
+    /**
+     * @return indexes of the keys grouped by slot, a single group if not in cluster mode,
+     * a group larger than the max batch size is split into chunks
+     */
+    List<int[]> batchGroups(List<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (!clusterMode) {
+            int[] indexes = new int[keys.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            return split(indexes);
+        }
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int slot = ClusterSlotHashUtil.calculateSlot(valueKey(keys.get(i)));
+            slots.computeIfAbsent(slot, k -> new ArrayList<>()).add(i);
+        }
+        List<int[]> groups = new ArrayList<>(slots.size());
+        for (List<Integer> slot : slots.values()) {
+            groups.addAll(split(slot.stream().mapToInt(Integer::intValue).toArray()));
+        }
+        return groups;
+    }
+
+    private List<int[]> split(int[] indexes) {
+        if (maxBatchSize <= 0 || indexes.length <= maxBatchSize) {
+            return Collections.singletonList(indexes);
+        }
+        List<int[]> chunks = new ArrayList<>((indexes.length - 1) / maxBatchSize + 1);
+        for (int from = 0; from < indexes.length; from += maxBatchSize) {
+            chunks.add(Arrays.copyOfRange(indexes, from, Math.min(indexes.length, from + maxBatchSize)));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return keys of the get script, the packed keys come first and the split keys are the fallback while migrating
+     */
+    byte[][] getKeys(List<String> keys, int[] indexes) {
+        return encodeKeys(keys, indexes, layout.isReadPacked() ? KEY_PACKED : null,
+                layout.isReadSplit() ? KeyEncoder.NO_SUFFIX : null, layout.isReadSplit() ? KEY_VERSION : null);
+    }
+
+    /**
+     * @return keys of the versions, the packed keys come first and the split version keys are the fallback
+     */
+    byte[][] versionKeys(List<String> keys, int[] indexes) {
+        return encodeKeys(keys, indexes, layout.isReadPacked() ? KEY_PACKED : null,
+                layout.isReadSplit() ? KEY_VERSION : null);
+    }
+
+    boolean isReadPacked() {
+        return layout.isReadPacked();
+    }
+
+    /**
+     * @param withTtl whether the get script reads the remaining ttls by PTTL
+     */
+    byte[][] getArgs(int[] indexes, boolean withTtl) {
+        byte[] ttlFlag = toBytes(withTtl ? 1 : 0);
+        return layout.isReadPacked()
+                ? new byte[][]{toBytes(indexes.length), ttlFlag} : new byte[][]{ttlFlag};
+    }
+
+    byte[][] versionArgs(int[] indexes) {
+        return layout.isReadPacked() ? new byte[][]{toBytes(indexes.length)} : new byte[0][];
+    }
+
+    /**
+     * @return keys of the get script followed by the lease keys
+     */
+    byte[][] leaseKeys(List<String> keys, int[] indexes) {
+        return encodeKeys(keys, indexes, layout.isReadPacked() ? KEY_PACKED : null,
+                layout.isReadSplit() ? KeyEncoder.NO_SUFFIX : null, layout.isReadSplit() ? KEY_VERSION : null, KEY_LEASE);
+    }
+
+    byte[][] leaseArgs(int[] indexes, boolean withTtl, long leaseMillis, String token) {
+        byte[][] args = getArgs(indexes, withTtl);
+        args = Arrays.copyOf(args, args.length + 2);
+        args[args.length - 2] = toBytes(leaseMillis);
+        args[args.length - 1] = token.getBytes(StandardCharsets.US_ASCII);
+        return args;
+    }
+
+    /**
+     * @return keys of the put script, the keys written come first and the keys of the other layout are dropped
+     */
+    byte[][] putKeys(List<String> keys, int[] indexes) {
+        return encodeKeys(keys, indexes, layout.isWritePacked() ? KEY_PACKED : null,
+                layout.isReadSplit() ? KeyEncoder.NO_SUFFIX : null, layout.isReadSplit() ? KEY_VERSION : null,
+                layout.isReadPacked() && !layout.isWritePacked() ? KEY_PACKED : null);
+    }
+
+    /**
+     * @param suffixes a run of the keys at indexes per suffix, a null suffix is skipped
+     */
+    private byte[][] encodeKeys(List<String> keys, int[] indexes, @Nullable byte[]... suffixes) {
+        int runs = 0;
+        for (byte[] suffix : suffixes) {
+            if (suffix != null) {
+                runs++;
+            }
+        }
+        byte[][] result = new byte[indexes.length * runs][];
+        int offset = 0;
+        for (byte[] suffix : suffixes) {
+            if (suffix != null) {
+                keyEncoder.encode(keys, indexes, suffix, result, offset);
+                offset += indexes.length;
+            }
+        }
+        return result;
+    }
+
+    private <T> GroupCommand<T> script(RedisScript<T> script,
+                                       Function<int[], byte[][]> keys, Function<int[], byte[][]> args) {
+        return new GroupCommand<T>() {
+            @Nullable
+            @Override
+            public T issue(RedisConnection connection, int[] indexes) {
+                return scriptExecutor.execute(connection, script, keys.apply(indexes), args.apply(indexes));
+            }
+
+            @Nullable
+            @Override
+            public T convert(@Nullable Object result) {
+                return scriptExecutor.deserialize(script, result);
+            }
+        };
+    }
+
+    /**
+     * The command of a group of keys, issued alone or in the pipeline of a lane.
+     */
+    @FunctionalInterface
+    interface GroupCommand<T> {
+        /**
+         * @return the result, null if the connection is pipelined
+         */
+        @Nullable
+        T issue(RedisConnection connection, int[] indexes);
+
+        /**
+         * @param result raw result of the command in a pipeline
+         */
+        @Nullable
+        @SuppressWarnings("unchecked")
+        default T convert(@Nullable Object result) {
+            return (T) result;
+        }
+
+        default <R> GroupCommand<R> map(Function<T, R> mapper) {
+            GroupCommand<T> command = this;
+            return new GroupCommand<R>() {
+                @Override
+                public R issue(RedisConnection connection, int[] indexes) {
+                    return mapper.apply(command.issue(connection, indexes));
+                }
+
+                @Override
+                public R convert(@Nullable Object result) {
+                    return mapper.apply(command.convert(result));
+                }
+            };
+        }
+    }
+
+    String valueKey(String key) {
+        // keys in the same hash tag are in the same slot
+        return clusterMode ? "{" + key + "}" : key;
+    }
+
+
     @Override
     public void saveTimestampMillis(String key, long timeMillis) {
-        redisTemplate.opsForValue().set(key, timeMillis);
+        redisTemplate.opsForValue().set(key, toBytes(timeMillis));
     }
 
     @Override
     public long getTimestampMillis(String key) {
-        Long millis = (Long) redisTemplate.opsForValue().get(key);
+        byte[] millis = redisTemplate.opsForValue().get(key);
         if (millis == null) {
             return 0L;
         }
-        return millis;
+        return parseLong(millis);
+    }
+
+    @Override
+    public void saveCheckpoint(String key, @Nullable String checkpoint) {
+        if (checkpoint == null) {
+            redisTemplate.delete(key);
+        } else {
+            redisTemplate.opsForValue().set(key, checkpoint.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getCheckpoint(String key) {
+        byte[] checkpoint = redisTemplate.opsForValue().get(key);
+        return checkpoint == null ? null : new String(checkpoint, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(long number) {
+        return Long.toString(number).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long parseLong(@Nullable byte[] number) {
+        if (number == null || number.length == 0) {
+            return 0L;
+        }
+        return Long.parseLong(new String(number, StandardCharsets.US_ASCII));
     }
 }
@@ -0,0 +1,107 @@
+package io.github.edsuns.redis;
+
+import io.github.edsuns.CacheCodec;
+import io.github.edsuns.metrics.CacheMetrics;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Options of {@link RedisCacheStorage}, the defaults fit a standalone Redis.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 13:40
+ */
+public class RedisCacheStorageConfig {
+    /**
+     * tag a value key and its version key by the same hash tag,
+     * and run the scripts per slot because a script can't access keys of different slots.
+     * the scripts of a node are pipelined on a dedicated connection, so pool the connections of the factory
+     */
+    private boolean clusterMode;
+    /**
+     * runs the scripts of different nodes or chunks in parallel, defaults to a pool of two threads per processor
+     */
+    @Nullable
+    private Executor executor;
+    /**
+     * encodes the cached values, defaults to {@link io.github.edsuns.codec.JsonCacheCodec}
+     */
+    @Nullable
+    private CacheCodec codec;
+    /**
+     * name of the storage in metrics
+     */
+    private String name = "redis";
+    /**
+     * records the latency of every script or command
+     */
+    private CacheMetrics metrics = CacheMetrics.NOOP;
+    /**
+     * keys of a value and its version, see {@link RedisCacheLayout} for the migration steps
+     */
+    private RedisCacheLayout layout = RedisCacheLayout.SPLIT;
+    /**
+     * max keys per script or command, a larger batch is split into chunks that run in parallel
+     * so no single call blocks Redis for long, 0 means unbounded
+     */
+    private int maxBatchSize;
+
+    public boolean isClusterMode() {
+        return clusterMode;
+    }
+
+    public void setClusterMode(boolean clusterMode) {
+        this.clusterMode = clusterMode;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    @Nullable
+    public CacheCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(@Nullable CacheCodec codec) {
+        this.codec = codec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RedisCacheLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(RedisCacheLayout layout) {
+        this.layout = layout;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+}
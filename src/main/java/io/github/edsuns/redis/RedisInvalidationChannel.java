@@ -0,0 +1,86 @@
+package io.github.edsuns.redis;
+
+import io.github.edsuns.near.InvalidationChannel;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@link InvalidationChannel} over Redis pub/sub.
+ * <p>
+ * A message carries one {@code version key} pair per line, the version is {@code -} for deleted keys.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 11:16
+ */
+@ParametersAreNonnullByDefault
+public class RedisInvalidationChannel implements InvalidationChannel, AutoCloseable {
+    private static final String DEFAULT_CHANNEL = "cashe:invalidation";
+    private static final String DELETED = "-";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer container;
+    private final ChannelTopic topic;
+
+    public RedisInvalidationChannel(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_CHANNEL);
+    }
+
+    public RedisInvalidationChannel(RedisConnectionFactory connectionFactory, String channel) {
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.topic = new ChannelTopic(channel);
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    public void publish(Map<String, Integer> versions) {
+        StringBuilder message = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : versions.entrySet()) {
+            if (message.length() > 0) {
+                message.append('\n');
+            }
+            Integer version = entry.getValue();
+            message.append(version == null ? DELETED : version.toString()).append(' ').append(entry.getKey());
+        }
+        redisTemplate.convertAndSend(topic.getTopic(), message.toString());
+    }
+
+    @Override
+    public void subscribe(Consumer<Map<String, Integer>> listener) {
+        container.addMessageListener((message, pattern) ->
+                listener.accept(parse(new String(message.getBody(), StandardCharsets.UTF_8))), topic);
+    }
+
+    private static Map<String, Integer> parse(String message) {
+        Map<String, Integer> versions = new HashMap<>();
+        for (String line : message.split("\n")) {
+            int split = line.indexOf(' ');
+            if (split <= 0) {
+                continue;
+            }
+            String version = line.substring(0, split);
+            versions.put(line.substring(split + 1), DELETED.equals(version) ? null : Integer.valueOf(version));
+        }
+        return versions;
+    }
+
+    @Override
+    public void close() {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RedisSystemException(e.getMessage(), e);
+        }
+    }
+}
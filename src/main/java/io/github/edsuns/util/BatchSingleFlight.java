@@ -0,0 +1,156 @@
+package io.github.edsuns.util;
+
+import io.github.edsuns.metrics.CacheMetrics;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * {@link SingleFlight} keyed on every single key of a batch.
+ * <p>
+ * A batch joins the in-flight loads of the keys that are being loaded by others,
+ * and loads the rest of the keys with one call.
+ * The keys owned by a batch are loaded before waiting for others, so overlapping batches never deadlock.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 12:05
+ */
+@ParametersAreNonnullByDefault
+public class BatchSingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls;
+    private final String name;
+    private final CacheMetrics metrics;
+
+    public BatchSingleFlight() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    public BatchSingleFlight(ConcurrentMap<K, CompletableFuture<V>> calls) {
+        this(calls, "batch-single-flight", CacheMetrics.NOOP);
+    }
+
+    public BatchSingleFlight(String name, CacheMetrics metrics) {
+        this(new ConcurrentHashMap<>(), name, metrics);
+    }
+
+    public BatchSingleFlight(ConcurrentMap<K, CompletableFuture<V>> calls, String name, CacheMetrics metrics) {
+        this.calls = calls;
+        this.name = name;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param keys   keys to load
+     * @param loader loads the keys that are not in flight, a key missing in the returned map is loaded as null
+     * @return map key to loaded value, the value is null if nothing loaded
+     */
+    public Map<K, V> call(Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>((int) (keys.size() / .75 + 1));
+        Map<K, CompletableFuture<V>> owned = enter(keys, futures);
+        if (owned != null) {
+            load(owned, loader);
+        }
+        Map<K, V> result = new HashMap<>((int) (futures.size() / .75 + 1));
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            result.put(entry.getKey(), join(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #call(Collection, Function)}, but never blocks.
+     *
+     * @param loader loads the keys that are not in flight, a key missing in the loaded map is loaded as null
+     */
+    public CompletableFuture<Map<K, V>> callAsync(Collection<K> keys,
+                                                  Function<Collection<K>, CompletableFuture<Map<K, V>>> loader) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>((int) (keys.size() / .75 + 1));
+        Map<K, CompletableFuture<V>> owned = enter(keys, futures);
+        if (owned != null) {
+            CompletableFuture<Map<K, V>> loading;
+            try {
+                loading = loader.apply(Collections.unmodifiableSet(owned.keySet()));
+            } catch (Throwable e) {
+                loading = new CompletableFuture<>();
+                loading.completeExceptionally(e);
+            }
+            loading.whenComplete((loaded, e) -> {
+                if (e != null) {
+                    owned.values().forEach(future -> future.completeExceptionally(e));
+                } else {
+                    owned.forEach((key, future) -> future.complete(loaded.get(key)));
+                }
+                owned.forEach(calls::remove);
+            });
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<K, V> result = new HashMap<>((int) (futures.size() / .75 + 1));
+            futures.forEach((key, future) -> result.put(key, future.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Joins the in-flight calls of keys, and starts calls for the rest.
+     *
+     * @param futures receives the futures of all keys
+     * @return the calls started for the keys not in flight, null if all in flight
+     */
+    @Nullable
+    private Map<K, CompletableFuture<V>> enter(Collection<K> keys, Map<K, CompletableFuture<V>> futures) {
+        Map<K, CompletableFuture<V>> owned = null;
+        for (K key : keys) {
+            if (futures.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> inFlight = calls.putIfAbsent(key, future);
+            if (inFlight == null) {
+                if (owned == null) {
+                    owned = new HashMap<>();
+                }
+                owned.put(key, future);
+                futures.put(key, future);
+            } else {
+                futures.put(key, inFlight);
+            }
+        }
+        int ownedSize = owned == null ? 0 : owned.size();
+        metrics.recordSingleFlight(name, ownedSize, futures.size() - ownedSize);
+        return owned;
+    }
+
+    private void load(Map<K, CompletableFuture<V>> owned, Function<Collection<K>, Map<K, V>> loader) {
+        try {
+            Map<K, V> loaded = loader.apply(Collections.unmodifiableSet(owned.keySet()));
+            owned.forEach((key, future) -> future.complete(loaded.get(key)));
+        } catch (Throwable e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            owned.forEach(calls::remove);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.edsuns.util;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A concurrent map bounded by entry count and total weight.
+ * <p>
+ * Entries are evicted by the CLOCK (second-chance) algorithm: a read only sets a flag on the entry,
+ * so reads never contend on a shared structure.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 10:20
+ */
+@ParametersAreNonnullByDefault
+public class BoundedCache<K, V> {
+
+    private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final Queue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicInteger dead = new AtomicInteger();
+
+    private final long maximumSize;
+    private final long maximumWeight;
+    private final ToIntFunction<V> weigher;
+
+    public BoundedCache(long maximumSize) {
+        this(maximumSize, Long.MAX_VALUE, v -> 1);
+    }
+
+    public BoundedCache(long maximumSize, long maximumWeight, ToIntFunction<V> weigher) {
+        if (maximumSize <= 0 || maximumWeight <= 0) throw new IllegalArgumentException();
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    @Nullable
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.referenced = true;
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        final int w = weigher.applyAsInt(value);
+        map.compute(key, (k, node) -> {
+            if (node == null) {
+                node = new Node<>(k, value, w);
+                clock.add(node);
+                weight.addAndGet(w);
+            } else {
+                weight.addAndGet(w - node.weight);
+                node.value = value;
+                node.weight = w;
+                node.referenced = true;
+            }
+            return node;
+        });
+        evict();
+    }
+
+    /**
+     * Atomically computes the value of the key, a null result removes the entry.
+     *
+     * @return the new value
+     */
+    @Nullable
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Object[] result = new Object[2];
+        map.compute(key, (k, node) -> {
+            V value = remapping.apply(k, node == null ? null : node.value);
+            if (value == null) {
+                // unlink out of the lock
+                result[1] = node;
+                return null;
+            }
+            result[0] = value;
+            if (node == null) {
+                int w = weigher.applyAsInt(value);
+                node = new Node<>(k, value, w);
+                clock.add(node);
+                weight.addAndGet(w);
+            } else {
+                if (node.value != value) {
+                    int w = weigher.applyAsInt(value);
+                    weight.addAndGet(w - node.weight);
+                    node.value = value;
+                    node.weight = w;
+                }
+                node.referenced = true;
+            }
+            return node;
+        });
+        @SuppressWarnings("unchecked")
+        Node<K, V> removed = (Node<K, V>) result[1];
+        if (removed != null) {
+            unlink(removed);
+        } else {
+            evict();
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V) result[0];
+        return value;
+    }
+
+    @Nullable
+    public V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+    /**
+     * Removes the entry of the key if its current value matches the predicate.
+     */
+    public void removeIf(K key, Predicate<V> predicate) {
+        Node<K, V> node = map.get(key);
+        if (node != null && predicate.test(node.value) && map.remove(key, node)) {
+            unlink(node);
+        }
+    }
+
+    public void clear() {
+        for (K key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long weight() {
+        return weight.get();
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.removed = true;
+        weight.addAndGet(-node.weight);
+        // removed nodes are left in the clock queue, sweep them once they outnumber the live ones
+        if (dead.incrementAndGet() > Math.max(map.size(), 64)) {
+            dead.set(0);
+            clock.removeIf(n -> n.removed);
+        }
+    }
+
+    private void evict() {
+        while (map.size() > maximumSize || weight.get() > maximumWeight) {
+            Node<K, V> node = clock.poll();
+            if (node == null) {
+                return;
+            }
+            if (node.removed) {
+                continue;
+            }
+            if (node.referenced) {
+                // second chance
+                node.referenced = false;
+                clock.add(node);
+                continue;
+            }
+            if (map.remove(node.key, node)) {
+                node.removed = true;
+                weight.addAndGet(-node.weight);
+            }
+        }
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile int weight;
+        volatile boolean referenced;
+        volatile boolean removed;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
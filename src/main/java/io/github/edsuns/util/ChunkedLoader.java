@@ -0,0 +1,188 @@
+package io.github.edsuns.util;
+
+import io.github.edsuns.PartialLoadException;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Splits a large load into chunks and loads them concurrently, so the latency scales with
+ * the chunks divided by the parallelism instead of the total ids, and no single query gets huge.
+ * <p>
+ * With a target latency, the chunk size adapts to the observed latency of the chunks:
+ * it halves when a chunk is slower than the target, and grows by a quarter when a full chunk
+ * takes less than half of the target, between 1/8 of the max chunk size and the max chunk size.
+ * <p>
+ * The caller loads chunks itself, helped by at most {@code parallelism - 1} workers shared by all loads,
+ * so concurrent loads don't multiply the threads and the database connections, a load that finds no free
+ * worker loads its chunks on the caller one after another.
+ * <p>
+ * A failed chunk doesn't stop the others, the failures are thrown as a {@link PartialLoadException}
+ * along with the loaded chunks, or as the error of the first chunk if all failed.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:05
+ */
+@ParametersAreNonnullByDefault
+public class ChunkedLoader {
+    private final int maxChunkSize;
+    private final int minChunkSize;
+    private final int parallelism;
+    private final long targetNanos;
+    private final Executor executor;
+    /**
+     * free workers shared by all loads
+     */
+    private final Semaphore workers;
+    private volatile int chunkSize;
+
+    /**
+     * @param maxChunkSize  max ids per chunk
+     * @param parallelism   max chunks at the same time, of a load and of the workers shared by all loads
+     * @param targetMillis  target latency of a chunk, 0 keeps the chunk size at max
+     * @param executor      runs the chunks, null for virtual threads where available
+     */
+    public ChunkedLoader(int maxChunkSize, int parallelism, long targetMillis, @Nullable Executor executor) {
+        if (maxChunkSize <= 0 || parallelism <= 0 || targetMillis < 0) throw new IllegalArgumentException();
+        this.maxChunkSize = maxChunkSize;
+        this.minChunkSize = Math.max(1, maxChunkSize / 8);
+        this.parallelism = parallelism;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.executor = executor != null ? executor : defaultExecutor();
+        this.workers = new Semaphore(parallelism - 1);
+        this.chunkSize = maxChunkSize;
+    }
+
+    public <X, ID> List<X> load(Collection<ID> ids, Function<Collection<ID>, List<X>> loader) {
+        int size = chunkSize;
+        if (ids.size() <= size) {
+            return loadChunk(ids, loader);
+        }
+        List<List<ID>> chunks = split(ids, size);
+        List<?>[] results = new List<?>[chunks.size()];
+        Throwable[] errors = new Throwable[chunks.size()];
+        AtomicInteger next = new AtomicInteger();
+        // every worker takes the next chunk until none is left
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+                try {
+                    results[i] = loadChunk(chunks.get(i), loader);
+                } catch (Throwable e) {
+                    errors[i] = e;
+                }
+            }
+        };
+        int helpers = Math.min(parallelism, chunks.size()) - 1;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(helpers);
+        for (int i = 0; i < helpers && workers.tryAcquire(); i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(worker, executor).whenComplete((v, e) -> workers.release()));
+            } catch (RejectedExecutionException e) {
+                // the other workers take the chunks
+                workers.release();
+                break;
+            }
+        }
+        worker.run();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        return collect(chunks, results, errors);
+    }
+
+    private <X, ID> List<X> loadChunk(Collection<ID> ids, Function<Collection<ID>, List<X>> loader) {
+        long start = System.nanoTime();
+        List<X> data = loader.apply(ids);
+        adapt(ids.size(), System.nanoTime() - start);
+        return data;
+    }
+
+    private void adapt(int size, long nanos) {
+        if (targetNanos == 0) {
+            return;
+        }
+        int current = chunkSize;
+        // racy updates only lose steps
+        if (nanos > targetNanos) {
+            chunkSize = Math.max(minChunkSize, current / 2);
+        } else if (nanos < targetNanos / 2 && size >= current) {
+            chunkSize = Math.min(maxChunkSize, current + Math.max(1, current / 4));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <X, ID> List<X> collect(List<List<ID>> chunks, List<?>[] results, Throwable[] errors) {
+        List<X> loaded = new ArrayList<>();
+        List<ID> failedIds = new ArrayList<>();
+        Throwable error = null;
+        for (int i = 0; i < results.length; i++) {
+            if (errors[i] == null) {
+                loaded.addAll((List<X>) results[i]);
+                continue;
+            }
+            failedIds.addAll(chunks.get(i));
+            if (error == null) {
+                error = errors[i];
+            } else {
+                error.addSuppressed(errors[i]);
+            }
+        }
+        if (error == null) {
+            return loaded;
+        }
+        if (failedIds.size() == countIds(chunks)) {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+        }
+        throw new PartialLoadException(loaded, failedIds, error);
+    }
+
+    private static int countIds(List<? extends List<?>> chunks) {
+        int count = 0;
+        for (List<?> chunk : chunks) {
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    private static <ID> List<List<ID>> split(Collection<ID> ids, int size) {
+        List<List<ID>> chunks = new ArrayList<>((ids.size() - 1) / size + 1);
+        List<ID> chunk = new ArrayList<>(size);
+        for (ID id : ids) {
+            chunk.add(id);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return a virtual thread per task on Java 21+, otherwise a cached pool, the threads in use are bounded by the workers
+     */
+    private static Executor defaultExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new NamedThreadFactory("cashe-database-load"));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.edsuns.util;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A count-min sketch of 4 rows that estimates the access frequency of keys in bounded memory.
+ * <p>
+ * All counters are halved once the additions reach 10 times the width, so the old accesses fade out.
+ * Counters are updated without synchronization, a racing update may be lost, which only lowers an estimate.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:30
+ */
+@ParametersAreNonnullByDefault
+public class FrequencySketch<K> {
+    private static final int DEPTH = 4;
+    private static final int MAX_WIDTH = 1 << 16;
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+    private volatile int resets;
+
+    /**
+     * @param width counters per row, rounded up to a power of two, at most 65536
+     */
+    public FrequencySketch(int width) {
+        if (width <= 0) throw new IllegalArgumentException();
+        int w = Math.min(MAX_WIDTH, Integer.highestOneBit(width - 1) << 1);
+        w = Math.max(w, 1);
+        this.table = new int[DEPTH * w];
+        this.mask = w - 1;
+        this.sampleSize = 10 * w;
+    }
+
+    /**
+     * @return the estimated frequency of the key after the increment
+     */
+    public int increment(K key) {
+        long hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            int count = table[index];
+            if (count < Integer.MAX_VALUE) {
+                table[index] = ++count;
+            }
+            min = Math.min(min, count);
+        }
+        if (additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+        return min;
+    }
+
+    public int frequency(K key) {
+        long hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table[index(hash, i)]);
+        }
+        return min;
+    }
+
+    /**
+     * @return the count of halvings so far
+     */
+    public int resets() {
+        return resets;
+    }
+
+    private void reset() {
+        synchronized (this) {
+            if (additions.get() < sampleSize) {
+                return;
+            }
+            additions.set(0);
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>>= 1;
+            }
+            resets++;
+        }
+    }
+
+    private int index(long hash, int row) {
+        // a 16 bits slice of the hash per row
+        return row * (mask + 1) + (int) ((hash >>> (row << 4)) & mask);
+    }
+
+    private static long spread(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.edsuns.util;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named by {@code prefix-n}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 13:02
+ */
+@ParametersAreNonnullByDefault
+public class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
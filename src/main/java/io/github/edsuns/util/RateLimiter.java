@@ -0,0 +1,36 @@
+package io.github.edsuns.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads permits evenly over time, a caller sleeps until its permits are available.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 17:34
+ */
+public class RateLimiter {
+    private final long nanosPerPermit;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond 0 or less means unlimited
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        if (nanosPerPermit == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            waitNanos = Math.max(0, nextFreeNanos - now);
+            nextFreeNanos = Math.max(nextFreeNanos, now) + nanosPerPermit * permits;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
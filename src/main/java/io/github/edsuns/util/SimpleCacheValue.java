@@ -18,6 +18,11 @@ public class SimpleCacheValue implements CacheValue {
     @Nullable
     private Object value;
     private boolean isNullCache;
+    private long ttlMillis = -1;
+    private boolean stale;
+    private boolean loading;
+    @Nullable
+    private String leaseToken;
 
     public SimpleCacheValue() {
     }
@@ -57,4 +62,41 @@ public class SimpleCacheValue implements CacheValue {
         isNullCache = nullCache;
     }
 
+    @Override
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+
+    @Override
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    @Nullable
+    @Override
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public void setLeaseToken(@Nullable String leaseToken) {
+        this.leaseToken = leaseToken;
+    }
+
 }
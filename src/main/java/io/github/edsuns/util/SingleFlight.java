@@ -1,5 +1,7 @@
 package io.github.edsuns.util;
 
+import io.github.edsuns.metrics.CacheMetrics;
+
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
@@ -12,19 +14,41 @@ import java.util.function.Supplier;
 public class SingleFlight<K> {
 
     private final ConcurrentMap<K, Call<?>> calls;
+    private final String name;
+    private final CacheMetrics metrics;
 
     public SingleFlight() {
         this(new ConcurrentHashMap<>());
     }
 
     public SingleFlight(ConcurrentMap<K, Call<?>> calls) {
+        this(calls, "single-flight", CacheMetrics.NOOP);
+    }
+
+    public SingleFlight(String name, CacheMetrics metrics) {
+        this(new ConcurrentHashMap<>(), name, metrics);
+    }
+
+    public SingleFlight(ConcurrentMap<K, Call<?>> calls, String name, CacheMetrics metrics) {
         this.calls = calls;
+        this.name = name;
+        this.metrics = metrics;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T call(K key, Supplier<T> fn) {
         if (key == null || fn == null) throw new NullPointerException();
-        Call<T> call = (Call<T>) calls.computeIfAbsent(key, k -> new Call<>(fn));
+        Call<T> call = (Call<T>) calls.get(key);
+        boolean owned = false;
+        if (call == null) {
+            Call<T> created = new Call<>(fn);
+            call = (Call<T>) calls.putIfAbsent(key, created);
+            if (call == null) {
+                call = created;
+                owned = true;
+            }
+        }
+        metrics.recordSingleFlight(name, owned ? 1 : 0, owned ? 0 : 1);
         return call.get(v -> calls.remove(key));
     }
 
@@ -0,0 +1,22 @@
+package io.github.edsuns.util;
+
+import javax.annotation.Nullable;
+
+/**
+ * Version arithmetic shared by the storages, must stay in line with {@code put_versioned_values.lua}.
+ *
+ * @author edsuns@qq.com
+ * @since 2026/10/17 18:50
+ */
+public final class Versions {
+    private Versions() {
+    }
+
+    /**
+     * @param version current version, null if absent
+     * @return the version after a successful put, wraps to 1 instead of overflowing
+     */
+    public static int next(@Nullable Integer version) {
+        return version == null || version == Integer.MAX_VALUE ? 1 : version + 1;
+    }
+}
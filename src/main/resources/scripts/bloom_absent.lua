@@ -0,0 +1,18 @@
+-- KEYS[1] the filter, ARGV[1] bit indexes per id, ARGV[2..] bit indexes
+-- returns 1-based indexes of the ids that definitely don't exist
+local absent = {}
+if redis.call('EXISTS', KEYS[1]) == 0 then
+  -- not built yet
+  return absent
+end
+local hashes = tonumber(ARGV[1])
+local ids = (#ARGV - 1) / hashes
+for i = 1, ids do
+  for j = 1, hashes do
+    if redis.call('GETBIT', KEYS[1], ARGV[1 + (i - 1) * hashes + j]) == 0 then
+      table.insert(absent, i)
+      break
+    end
+  end
+end
+return absent
\ No newline at end of file
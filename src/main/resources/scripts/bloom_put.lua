@@ -0,0 +1,9 @@
+-- KEYS the filters, a filter is only set if it exists, ARGV bit indexes
+for k = 1, #KEYS do
+  if redis.call('EXISTS', KEYS[k]) == 1 then
+    for i = 1, #ARGV do
+      redis.call('SETBIT', KEYS[k], ARGV[i], 1)
+    end
+  end
+end
+return 0
\ No newline at end of file
@@ -0,0 +1,59 @@
+-- a packed entry is 'version:expireAt:value' in one key, expireAt is 0 if the value never expires,
+-- the version of a stale value is suffixed by 's'
+-- ARGV[2] is 1 to read the remaining ttls of the split values while migrating, the packed ones are computed
+-- ARGV[3], if any, is the lease in millis taken on every absent value, the lease keys come last
+-- ARGV[4] is the token of the caller stored in the lease, only the holder of the token releases it
+-- the lease and trim writes after TIME require the effects replication, which is the default since Redis 5
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+local n = tonumber(ARGV[1])
+local withTtl = ARGV[2] == '1'
+local lease = tonumber(ARGV[3])
+local token = ARGV[4]
+local hasSplit = #KEYS - (lease and n or 0) > n
+local function miss(i, value, version, ttl)
+  if lease and not value then
+    -- 1 if the caller takes the lease to load the value, 0 if another caller is loading it
+    local leased = redis.call('SET', KEYS[#KEYS - n + i], token, 'NX', 'PX', lease) and 1 or 0
+    return { value, version, ttl, leased }
+  end
+  return { value, version, ttl }
+end
+local function trim(key, version, expireAt)
+  -- the value expired, only the version header lives on for the rest of the key ttl
+  local ttl = redis.call('PTTL', key)
+  if ttl > 0 then
+    redis.call('SET', key, string.format('%s:%d:', version, expireAt), 'PX', ttl)
+  end
+end
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local packed = redis.call('MGET', unpack(KEYS, 1, n))
+local versionedValues = {}
+for i = 1, n do
+  local entry = packed[i]
+  if entry then
+    local version, expireAt, offset = string.match(entry, '^(%d+s?):(%d+):()')
+    expireAt = tonumber(expireAt)
+    if expireAt == 0 then
+      table.insert(versionedValues, { string.sub(entry, offset), version, -1 })
+    elseif expireAt > now then
+      table.insert(versionedValues, { string.sub(entry, offset), version, expireAt - now })
+    else
+      -- the value expired but the version lives on
+      if offset <= #entry then
+        trim(KEYS[i], version, expireAt)
+      end
+      table.insert(versionedValues, miss(i, false, version, -2))
+    end
+  elseif hasSplit then
+    -- not migrated yet, fall back to the split layout
+    local value = redis.call('GET', KEYS[n + i])
+    local ttl = value and withTtl and redis.call('PTTL', KEYS[n + i]) or false
+    table.insert(versionedValues, miss(i, value, redis.call('GET', KEYS[n * 2 + i]), ttl))
+  else
+    table.insert(versionedValues, miss(i, false, false, -2))
+  end
+end
+return versionedValues
\ No newline at end of file
@@ -0,0 +1,13 @@
+-- reads only the version header of the packed entries, the values stay in Redis
+local n = tonumber(ARGV[1])
+local versions = {}
+for i = 1, n do
+  -- a version has at most 10 digits and the stale mark
+  local version = string.match(redis.call('GETRANGE', KEYS[i], 0, 11), '^(%d+)s?:')
+  if not version and #KEYS > n then
+    -- not migrated yet, read the version key of the split layout
+    version = redis.call('GET', KEYS[n + i])
+  end
+  table.insert(versions, version or false)
+end
+return versions
\ No newline at end of file
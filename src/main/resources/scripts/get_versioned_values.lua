@@ -1,8 +1,26 @@
-local half = math.floor(#KEYS / 2)
+-- the lease writes after PTTL require the effects replication, which is the default since Redis 5
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+-- ARGV[1] is 1 to read the remaining ttls of the values, for refresh-ahead
+-- ARGV[2], if any, is the lease in millis taken on every absent value, the lease keys follow the version keys
+-- ARGV[3] is the token of the caller stored in the lease, only the holder of the token releases it
+local withTtl = ARGV[1] == '1'
+local lease = tonumber(ARGV[2])
+local token = ARGV[3]
+local half = lease and #KEYS / 3 or math.floor(#KEYS / 2)
 local values = redis.call('MGET', unpack(KEYS, 1, half))
-local versions = redis.call('MGET', unpack(KEYS, half + 1, #KEYS))
+local versions = redis.call('MGET', unpack(KEYS, half + 1, half * 2))
 local versionedValues = {}
 for i = 1, #values do
-  table.insert(versionedValues, { values[i], versions[i] })
+  -- remaining ttl of the value for refresh-ahead, nil if not read
+  local ttl = values[i] and withTtl and redis.call('PTTL', KEYS[i]) or false
+  if lease and not values[i] then
+    -- 1 if the caller takes the lease to load the value, 0 if another caller is loading it
+    local leased = redis.call('SET', KEYS[half * 2 + i], token, 'NX', 'PX', lease) and 1 or 0
+    table.insert(versionedValues, { values[i], versions[i], ttl, leased })
+  else
+    table.insert(versionedValues, { values[i], versions[i], ttl })
+  end
 end
 return versionedValues
\ No newline at end of file
@@ -0,0 +1,62 @@
+-- TIME before writes requires the effects replication, which is the default since Redis 5
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+-- marks the values stale instead of deleting them: the version is bumped, so the CAS scopes begun before fail,
+-- and suffixed by 's'. a stale value is served while a reader refreshes it, and expires in maxStale at the latest
+-- KEYS are the get keys of the layout: packed(n), values(n) and versions(n), or both while migrating
+local n = tonumber(ARGV[1])
+local maxStale = tonumber(ARGV[2])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local hasPacked = #KEYS ~= n * 2
+local split = hasPacked and n or 0
+local function nextVersion(version)
+  -- prevent overflow, versions are read as int
+  return (version == nil or version == 2147483647) and 1 or version + 1
+end
+local function setKeepTtl(key, value)
+  local ttl = redis.call('PTTL', key)
+  if ttl > 0 then
+    redis.call('SET', key, value, 'PX', ttl)
+  else
+    redis.call('SET', key, value)
+  end
+end
+local markedIndexes = {}
+for i = 1, n do
+  local entry = hasPacked and redis.call('GET', KEYS[i])
+  if entry then
+    local version, expireAt, offset = string.match(entry, '^(%d+)s?:(%d+):()')
+    local next = nextVersion(tonumber(version))
+    expireAt = tonumber(expireAt)
+    if expireAt == 0 or expireAt > now then
+      local staleAt = now + maxStale
+      if expireAt ~= 0 and expireAt < staleAt then
+        staleAt = expireAt
+      end
+      setKeepTtl(KEYS[i], string.format('%ds:%d:', next, staleAt) .. string.sub(entry, offset))
+      table.insert(markedIndexes, i)
+    else
+      setKeepTtl(KEYS[i], string.format('%d:%d:', next, expireAt))
+    end
+  elseif #KEYS >= n * 2 then
+    local valueKey = KEYS[split + i]
+    local versionKey = KEYS[split + n + i]
+    local version = redis.call('GET', versionKey)
+    local ttl = redis.call('PTTL', valueKey)
+    if not version then
+      -- a value without a version is never served
+      redis.call('DEL', valueKey)
+    elseif ttl == -2 then
+      setKeepTtl(versionKey, nextVersion(tonumber(string.match(version, '^%d+'))))
+    else
+      setKeepTtl(versionKey, nextVersion(tonumber(string.match(version, '^%d+'))) .. 's')
+      if ttl == -1 or ttl > maxStale then
+        redis.call('PEXPIRE', valueKey, maxStale)
+      end
+      table.insert(markedIndexes, i)
+    end
+  end
+end
+return markedIndexes
\ No newline at end of file
@@ -0,0 +1,36 @@
+-- TIME before writes requires the effects replication, which is the default since Redis 5
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+local n = #ARGV / 3
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local packed = redis.call('MGET', unpack(KEYS, 1, n))
+local failedIndexes = {}
+for i = 1, n do
+  local version
+  if packed[i] then
+    version = tonumber(string.match(packed[i], '^(%d+)s?:'))
+  elseif #KEYS > n then
+    -- not migrated yet, compare with the version of the split layout
+    local splitVersion = redis.call('GET', KEYS[n * 2 + i])
+    version = splitVersion and tonumber(string.match(splitVersion, '^%d+')) or nil
+  end
+  if tonumber(ARGV[n + i]) == version then
+    -- prevent overflow, versions are read as int
+    local next = (version == nil or version == 2147483647) and 1 or version + 1
+    local ttl = tonumber(ARGV[n * 2 + i])
+    if ttl and ttl > 0 then
+      -- the key outlives its value, so the version never restarts under a live value
+      redis.call('SET', KEYS[i], string.format('%d:%d:', next, now + ttl) .. ARGV[i], 'PX', ttl * 2)
+    else
+      redis.call('SET', KEYS[i], string.format('%d:0:', next) .. ARGV[i])
+    end
+    if #KEYS > n then
+      redis.call('DEL', KEYS[n + i], KEYS[n * 2 + i])
+    end
+  else
+    table.insert(failedIndexes, i)
+  end
+end
+return failedIndexes
\ No newline at end of file
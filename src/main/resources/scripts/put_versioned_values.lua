@@ -1,18 +1,36 @@
-local half = math.floor(#KEYS / 2)
-local versions = redis.call('MGET', unpack(KEYS, half + 1, #KEYS))
-local failedKeys = {}
+local half = #ARGV / 3
+local versions = redis.call('MGET', unpack(KEYS, half + 1, half * 2))
+local failedIndexes = {}
 for i = 1, #versions do
-  local version = tonumber(versions[i])
+  -- a stale version is suffixed by 's'
+  local version = versions[i] and tonumber(string.match(versions[i], '^%d+')) or nil
+  if version == nil and #KEYS > half * 2 then
+    -- written by the instances already migrated, compare with the version of the packed layout
+    local entry = redis.call('GET', KEYS[half * 2 + i])
+    if entry then
+      version = tonumber(string.match(entry, '^(%d+)s?:'))
+    end
+  end
   if tonumber(ARGV[half + i]) == version then
-    redis.call('SET', KEYS[i], ARGV[i])
-    if version == 9223372036854775807 then
-      -- prevent overflow
-      redis.call('SET', KEYS[half + i], 1)
+    local ttl = tonumber(ARGV[half * 2 + i])
+    if ttl and ttl > 0 then
+      redis.call('SET', KEYS[i], ARGV[i], 'PX', ttl)
     else
-      redis.call('INCR', KEYS[half + i])
+      redis.call('SET', KEYS[i], ARGV[i])
+    end
+    -- prevent overflow, versions are read as int
+    local next = (version == nil or version == 2147483647) and 1 or version + 1
+    if ttl and ttl > 0 then
+      -- the version outlives its value, so the counter never restarts under a live value
+      redis.call('SET', KEYS[half + i], next, 'PX', ttl * 2)
+    else
+      redis.call('SET', KEYS[half + i], next)
+    end
+    if #KEYS > half * 2 then
+      redis.call('DEL', KEYS[half * 2 + i])
     end
   else
-    table.insert(failedKeys, '"' .. KEYS[i] .. '"')
+    table.insert(failedIndexes, i)
   end
 end
-return failedKeys
\ No newline at end of file
+return failedIndexes
\ No newline at end of file
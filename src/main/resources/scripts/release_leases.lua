@@ -0,0 +1,10 @@
+-- releases the leases still held by the caller, ARGV[i] is the token stored in the lease KEYS[i]
+-- a lease that expired and was taken by another caller holds another token, and is kept
+local released = 0
+for i = 1, #KEYS do
+  if redis.call('GET', KEYS[i]) == ARGV[i] then
+    redis.call('DEL', KEYS[i])
+    released = released + 1
+  end
+end
+return released
@@ -0,0 +1,132 @@
+package io.github.edsuns;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 23:20
+ */
+class BatchingCacheManagerTest {
+    private final RecordingCacheManager delegate = new RecordingCacheManager();
+    private BatchingCacheManager<String, Integer> batching;
+
+    @AfterEach
+    void close() {
+        if (batching != null) {
+            batching.close();
+        }
+    }
+
+    @Test
+    void flushAfterWindow() {
+        batching = new BatchingCacheManager<>(delegate, 50, TimeUnit.MILLISECONDS, 100);
+        long start = System.nanoTime();
+        CompletableFuture<List<String>> first = batching.getByIdsAsync(Arrays.asList(1, 2));
+        CompletableFuture<List<String>> second = batching.getByIdsAsync(Collections.singletonList(3));
+        assertFalse(first.isDone());
+
+        assertEquals(Arrays.asList("1", "2"), first.join());
+        assertEquals(Collections.singletonList("3"), second.join());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        // one batch of both callers
+        assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), delegate.batches);
+    }
+
+    @Test
+    void dispatchAtMaxBatchSize() {
+        batching = new BatchingCacheManager<>(delegate, 1, TimeUnit.HOURS, 3);
+        CompletableFuture<List<String>> first = batching.getByIdsAsync(Arrays.asList(1, 2));
+        assertFalse(first.isDone());
+
+        // dispatched on the caller that fills the batch, without waiting for the window
+        CompletableFuture<List<String>> second = batching.getByIdsAsync(Collections.singletonList(3));
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(Arrays.asList("1", "2"), first.join());
+        assertEquals(Collections.singletonList("3"), second.join());
+        assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), delegate.batches);
+    }
+
+    @Test
+    void sliceOfEachCaller() {
+        batching = new BatchingCacheManager<>(delegate, 1, TimeUnit.HOURS, 100);
+        delegate.absent.add(4);
+        CompletableFuture<List<String>> first = batching.getByIdsAsync(Arrays.asList(2, 1, 2));
+        CompletableFuture<List<String>> second = batching.getByIdsAsync(Arrays.asList(1, 4, 3));
+        batching.flush();
+
+        assertEquals(Arrays.asList("2", "1", "2"), first.join());
+        assertEquals(Arrays.asList("1", null, "3"), second.join());
+        // each id is looked up once
+        assertEquals(Collections.singletonList(Arrays.asList(2, 1, 4, 3)), delegate.batches);
+    }
+
+    @Test
+    void failureReachesAllCallers() {
+        batching = new BatchingCacheManager<>(delegate, 1, TimeUnit.HOURS, 100);
+        delegate.failure = new IllegalStateException("load failed");
+        CompletableFuture<List<String>> first = batching.getByIdsAsync(Collections.singletonList(1));
+        CompletableFuture<List<String>> second = batching.getByIdsAsync(Collections.singletonList(2));
+        batching.flush();
+
+        CompletionException e = assertThrows(CompletionException.class, first::join);
+        assertSame(delegate.failure, e.getCause());
+        e = assertThrows(CompletionException.class, second::join);
+        assertSame(delegate.failure, e.getCause());
+
+        // the sync api rethrows the cause
+        try (BatchingCacheManager<String, Integer> sync = new BatchingCacheManager<>(delegate, 1, TimeUnit.HOURS, 1)) {
+            assertSame(delegate.failure,
+                    assertThrows(IllegalStateException.class, () -> sync.getByIds(Collections.singletonList(3))));
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class RecordingCacheManager implements CacheManager<String, Integer> {
+        private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final Set<Integer> absent = new HashSet<>();
+        private volatile RuntimeException failure;
+
+        @Override
+        public List<String> getByIds(Collection<Integer> ids) {
+            batches.add(new ArrayList<>(ids));
+            if (failure != null) {
+                throw failure;
+            }
+            List<String> values = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                values.add(absent.contains(id) ? null : String.valueOf(id));
+            }
+            return values;
+        }
+
+        @Override
+        public void updateByIds(Collection<String> entities) {
+        }
+
+        @Override
+        public void setNulls(Collection<Integer> ids) {
+        }
+
+        @Override
+        public void delete(Collection<Integer> ids) {
+        }
+
+        @Override
+        public void scheduledRefreshUpdated() {
+        }
+
+        @Override
+        public void scheduledRefreshAll() {
+        }
+    }
+}
@@ -1,13 +1,37 @@
 package io.github.edsuns;
 
+import io.github.edsuns.bloom.ScalableBloomFilter;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import io.github.edsuns.metrics.CacheMetrics;
+import io.github.edsuns.metrics.Stage;
+import io.github.edsuns.redis.LettuceCacheStorage;
+import io.github.edsuns.redis.RedisBloomFilter;
+import io.github.edsuns.redis.RedisCacheLayout;
+import io.github.edsuns.redis.RedisCacheStorage;
+import io.github.edsuns.redis.RedisCacheStorageConfig;
+import io.github.edsuns.util.SimpleCacheValue;
 import io.github.edsuns.util.Some;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author edsuns@qq.com
@@ -89,12 +113,31 @@ class CacheManagerTest {
             return Collections.singletonList(2L);
         }
 
+        @Override
+        public Page<Long> scanIds(@Nullable String cursor, int limit) {
+            long after = cursor == null ? Long.MIN_VALUE : Long.parseLong(cursor);
+            List<Long> ids = new ArrayList<>();
+            for (Book book : database) {
+                if (book.getId() > after && ids.size() < limit) {
+                    ids.add(book.getId());
+                }
+            }
+            if (ids.isEmpty()) {
+                return new Page<>(ids, null);
+            }
+            long last = ids.get(ids.size() - 1);
+            boolean hasNext = database.stream().anyMatch(x -> x.getId() > last);
+            return new Page<>(ids, hasNext ? String.valueOf(last) : null);
+        }
+
         @Override
         public String getEntityName() {
             return "book";
         }
     }
 
+    private static final String LEASE_KEY = "cashe:book:1:l";
+
     private TestContext testContext = new TestContext();
 
     @Test
@@ -132,4 +175,844 @@ class CacheManagerTest {
         // rollback
         testContext.getBookCacheManager().delete(Collections.singletonList(2L));
     }
-}
\ No newline at end of file
+
+    @Test
+    void ttl() {
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setTtlMillis(60_000);
+        config.setNullTtlMillis(10_000);
+        config.setTtlJitter(.1);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        cacheManager.delete(Arrays.asList(1L, 3L));
+
+        // book3 doesn't exist and is cached by a null value
+        cacheManager.getByIds(Arrays.asList(1L, 3L));
+        long valueTtl = testContext.getRedis().getExpire("cashe:book:1", TimeUnit.MILLISECONDS);
+        long versionTtl = testContext.getRedis().getExpire("cashe:book:1:v", TimeUnit.MILLISECONDS);
+        long nullTtl = testContext.getRedis().getExpire("cashe:book:3", TimeUnit.MILLISECONDS);
+        assertTrue(valueTtl > 50_000 && valueTtl <= 66_000, "ttl with jitter " + valueTtl);
+        assertTrue(versionTtl > valueTtl, "version outlives value");
+        assertTrue(nullTtl > 0 && nullTtl <= 11_000, "null cache ttl " + nullTtl);
+
+        // a put without ttl persists the version again
+        testContext.getBookCacheManager().updateByIds(Collections.singletonList(new Book(1L, "book1")));
+        assertEquals(-1, testContext.getRedis().getExpire("cashe:book:1"));
+        assertEquals(-1, testContext.getRedis().getExpire("cashe:book:1:v"));
+
+        // rollback
+        cacheManager.delete(Arrays.asList(1L, 3L));
+    }
+
+    @Test
+    void async() {
+        LettuceCacheStorage storage = new LettuceCacheStorage((LettuceConnectionFactory) testContext.getConnectionFactory());
+        AsyncCacheManagerImpl<Book, Long> cacheManager = new AsyncCacheManagerImpl<>(
+                storage, testContext.getDatabase(), Book::getId);
+        cacheManager.deleteAsync(Arrays.asList(1L, 3L)).join();
+
+        assertEquals(Arrays.asList(new Book(1L, "book1"), null), cacheManager.getByIdsAsync(Arrays.asList(1L, 3L)).join());
+        assertEquals(1, testContext.getRedis().opsForValue().get("cashe:book:1:v"));
+        // served by cache
+        assertEquals(Arrays.asList(new Book(1L, "book1"), null), cacheManager.getByIdsAsync(Arrays.asList(1L, 3L)).join());
+
+        cacheManager.updateByIdsAsync(Collections.singletonList(new Book(1L, "book1_1"))).join();
+        assertEquals(new Some(new Book(1L, "book1_1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+        cacheManager.setNullsAsync(Collections.singletonList(1L)).join();
+        assertNull(cacheManager.getByIdsAsync(Collections.singletonList(1L)).join().get(0));
+        assertEquals(3, testContext.getRedis().opsForValue().get("cashe:book:1:v"));
+
+        // rollback
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1")));
+        cacheManager.deleteAsync(Arrays.asList(1L, 3L)).join();
+        cacheManager.close();
+        storage.close();
+    }
+
+    @Test
+    void asyncWritesUnpinHotKeys() {
+        LettuceCacheStorage storage = new LettuceCacheStorage((LettuceConnectionFactory) testContext.getConnectionFactory());
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setHotKeyTopN(1);
+        config.setHotKeyRevalidateMillis(TimeUnit.HOURS.toMillis(1));
+        AsyncCacheManagerImpl<Book, Long> cacheManager = new AsyncCacheManagerImpl<>(
+                storage, testContext.getDatabase(), Book::getId, config, Runnable::run);
+        cacheManager.deleteAsync(Collections.singletonList(1L)).join();
+        for (int i = 0; i < 10; i++) {
+            cacheManager.getByIdsAsync(Collections.singletonList(1L)).join();
+        }
+        assertEquals(Collections.singleton(1L), cacheManager.getHotIds().keySet());
+        // async reads are served by the replica too
+        testContext.getRedis().opsForValue().set("cashe:book:1", new Some(new Book(1L, "book1_0")));
+        assertEquals(new Book(1L, "book1"), cacheManager.getByIdsAsync(Collections.singletonList(1L)).join().get(0));
+
+        cacheManager.updateByIdsAsync(Collections.singletonList(new Book(1L, "book1_1"))).join();
+        assertEquals(new Book(1L, "book1_1"), cacheManager.getByIds(Collections.singletonList(1L)).get(0));
+        cacheManager.setNullsAsync(Collections.singletonList(1L)).join();
+        assertNull(cacheManager.getByIds(Collections.singletonList(1L)).get(0));
+
+        // rollback
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1")));
+        cacheManager.deleteAsync(Collections.singletonList(1L)).join();
+        assertEquals(new Book(1L, "book1"), cacheManager.getByIds(Collections.singletonList(1L)).get(0));
+        cacheManager.deleteAsync(Collections.singletonList(1L)).join();
+        storage.close();
+    }
+
+    @Test
+    void refreshAll() {
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setRefreshAllChunkSize(1);
+        config.setRefreshAllParallelism(2);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        String checkpointKey = "cashe:book:_cursor_";
+        cacheManager.delete(Arrays.asList(1L, 2L));
+
+        // resume from the checkpoint
+        testContext.getStorage().saveCheckpoint(checkpointKey, "1");
+        cacheManager.scheduledRefreshAll();
+        assertNull(testContext.getRedis().opsForValue().get("cashe:book:1"));
+        assertEquals(new Some(new Book(2L, "book2")), testContext.getRedis().opsForValue().get("cashe:book:2"));
+        assertNull(testContext.getStorage().getCheckpoint(checkpointKey));
+
+        cacheManager.scheduledRefreshAll();
+        assertEquals(new Some(new Book(1L, "book1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+        assertEquals(1, testContext.getRedis().opsForValue().get("cashe:book:1:v"));
+        assertEquals(2, testContext.getRedis().opsForValue().get("cashe:book:2:v"));
+
+        // rollback
+        cacheManager.delete(Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    void refreshAllByDefaults() {
+        CacheStorage redis = testContext.getStorage();
+        // keeps no checkpoint
+        CacheStorage storage = new CacheStorage() {
+            @Override
+            public List<String> put(Map<String, CacheValue> values) {
+                return redis.put(values);
+            }
+
+            @Override
+            public List<CacheValue> get(Collection<String> keys) {
+                return redis.get(keys);
+            }
+
+            @Override
+            public void delete(Collection<String> keys) {
+                redis.delete(keys);
+            }
+
+            @Override
+            public void saveTimestampMillis(String key, long timeMillis) {
+                redis.saveTimestampMillis(key, timeMillis);
+            }
+
+            @Override
+            public long getTimestampMillis(String key) {
+                return redis.getTimestampMillis(key);
+            }
+        };
+        // scans all ids as a single page
+        BookDatabase books = testContext.getDatabase();
+        Database<Book, Long> database = new Database<Book, Long>() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                return books.load(ids);
+            }
+
+            @Override
+            public void update(Collection<Book> entities) {
+                books.update(entities);
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return Arrays.asList(1L, 2L);
+            }
+
+            @Override
+            public String getEntityName() {
+                return books.getEntityName();
+            }
+        };
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setRefreshAllChunkSize(1);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(storage, database, Book::getId, config);
+        cacheManager.delete(Arrays.asList(1L, 2L));
+
+        cacheManager.scheduledRefreshAll();
+        assertEquals(new Some(new Book(1L, "book1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+        assertEquals(new Some(new Book(2L, "book2")), testContext.getRedis().opsForValue().get("cashe:book:2"));
+
+        // rollback
+        cacheManager.delete(Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    void refreshUpdatedChunked() {
+        CacheManagerConfig config = new CacheManagerConfig();
+        // the watermark advances per minute by default
+        config.setRefreshUpdatedChunkSize(1);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        String millisKey = "cashe:book:_millis_";
+        cacheManager.delete(Collections.singletonList(2L));
+        long lastMillis = System.currentTimeMillis() - 150_000;
+        testContext.getStorage().saveTimestampMillis(millisKey, lastMillis);
+
+        cacheManager.scheduledRefreshUpdated();
+        assertEquals(new Some(new Book(2L, "book2")), testContext.getRedis().opsForValue().get("cashe:book:2"));
+        // 3 windows
+        assertEquals(3, testContext.getRedis().opsForValue().get("cashe:book:2:v"));
+        assertTrue(testContext.getStorage().getTimestampMillis(millisKey) >= lastMillis + 150_000);
+
+        // rollback
+        cacheManager.delete(Collections.singletonList(2L));
+    }
+
+    @Test
+    void refreshAhead() throws InterruptedException {
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setTtlMillis(60_000);
+        // refresh on every read
+        config.setRefreshAheadBeta(1e12);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        cacheManager.delete(Collections.singletonList(1L));
+        cacheManager.getByIds(Collections.singletonList(1L));
+
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1_1")));
+        // the reader gets the current value, and the new value is put in background
+        assertEquals(Collections.singletonList(new Book(1L, "book1")), cacheManager.getByIds(Collections.singletonList(1L)));
+        for (int i = 0; i < 100 && !Objects.equals(2, testContext.getRedis().opsForValue().get("cashe:book:1:v")); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(new Some(new Book(1L, "book1_1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+        assertTrue(testContext.getRedis().getExpire("cashe:book:1", TimeUnit.MILLISECONDS) > 0);
+
+        // rollback
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1")));
+        cacheManager.delete(Collections.singletonList(1L));
+    }
+
+    @Test
+    void existenceFilter() {
+        RedisBloomFilter<Long> filter = new RedisBloomFilter<>(testContext.getConnectionFactory(), "cashe:book", 1000, .01);
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setExistenceFilter(filter);
+        CacheManagerImpl<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        cacheManager.delete(Arrays.asList(1L, 999L));
+        cacheManager.rebuildExistenceFilter();
+
+        assertEquals(Collections.singleton(999L), filter.absent(Arrays.asList(1L, 2L, 999L)));
+        assertEquals(Arrays.asList(new Book(1L, "book1"), null), cacheManager.getByIds(Arrays.asList(1L, 999L)));
+        // no null cache for the absent id
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("cashe:book:999"));
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("cashe:book:999:v"));
+
+        // rollback
+        cacheManager.delete(Collections.singletonList(1L));
+        testContext.getRedis().delete("{cashe:book}:bloom");
+    }
+
+    @Test
+    void rebuildExistenceFilterDuringInsert() {
+        Map<Long, Book> rows = new HashMap<>();
+        AtomicReference<Runnable> beforeCommit = new AtomicReference<>();
+        Database<Book, Long> database = new Database<Book, Long>() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                return ids.stream().map(rows::get).filter(Objects::nonNull).collect(Collectors.toList());
+            }
+
+            @Override
+            public void update(Collection<Book> entities) {
+                Optional.ofNullable(beforeCommit.getAndSet(null)).ifPresent(Runnable::run);
+                entities.forEach(book -> rows.put(book.getId(), book));
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return new ArrayList<>(rows.keySet());
+            }
+
+            @Override
+            public String getEntityName() {
+                return "book";
+            }
+        };
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setExistenceFilter(new ScalableBloomFilter<Long>(1000, .01));
+        CacheManagerImpl<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), database, Book::getId, config);
+        cacheManager.delete(Collections.singletonList(997L));
+        cacheManager.rebuildExistenceFilter();
+
+        // the rebuild scans past the row before it is visible
+        beforeCommit.set(cacheManager::rebuildExistenceFilter);
+        cacheManager.updateByIds(Collections.singletonList(new Book(997L, "book997")));
+        assertEquals(new Book(997L, "book997"), cacheManager.getByIds(Collections.singletonList(997L)).get(0));
+
+        // rollback
+        cacheManager.delete(Collections.singletonList(997L));
+    }
+
+    @Test
+    void asyncInsertWithExistenceFilter() {
+        Map<Long, Book> rows = new HashMap<>();
+        Database<Book, Long> database = new Database<Book, Long>() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                return ids.stream().map(rows::get).filter(Objects::nonNull).collect(Collectors.toList());
+            }
+
+            @Override
+            public void update(Collection<Book> entities) {
+                entities.forEach(book -> rows.put(book.getId(), book));
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return new ArrayList<>(rows.keySet());
+            }
+
+            @Override
+            public String getEntityName() {
+                return "book";
+            }
+        };
+        LettuceCacheStorage storage = new LettuceCacheStorage((LettuceConnectionFactory) testContext.getConnectionFactory());
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setExistenceFilter(new ScalableBloomFilter<Long>(1000, .01));
+        AsyncCacheManagerImpl<Book, Long> cacheManager = new AsyncCacheManagerImpl<>(
+                storage, database, Book::getId, config, Runnable::run);
+        cacheManager.deleteAsync(Collections.singletonList(998L)).join();
+        cacheManager.rebuildExistenceFilter();
+        assertNull(cacheManager.getByIdsAsync(Collections.singletonList(998L)).join().get(0));
+
+        // inserted through the async api
+        cacheManager.updateByIdsAsync(Collections.singletonList(new Book(998L, "book998"))).join();
+        assertEquals(new Book(998L, "book998"), cacheManager.getByIdsAsync(Collections.singletonList(998L)).join().get(0));
+
+        // rollback
+        cacheManager.deleteAsync(Collections.singletonList(998L)).join();
+        storage.close();
+    }
+
+    @Test
+    void packedLayout() {
+        CacheManager<Book, Long> split = layoutCacheManager(RedisCacheLayout.SPLIT);
+        CacheManager<Book, Long> splitReadPacked = layoutCacheManager(RedisCacheLayout.SPLIT_READ_PACKED);
+        CacheManager<Book, Long> packedReadSplit = layoutCacheManager(RedisCacheLayout.PACKED_READ_SPLIT);
+        CacheManager<Book, Long> packed = layoutCacheManager(RedisCacheLayout.PACKED);
+        packedReadSplit.delete(Arrays.asList(1L, 3L));
+
+        assertEquals(Arrays.asList(new Book(1L, "book1"), null), split.getByIds(Arrays.asList(1L, 3L)));
+        assertEquals(Arrays.asList(new Book(1L, "book1"), null), splitReadPacked.getByIds(Arrays.asList(1L, 3L)));
+
+        // the version of the split layout is carried over, and the split keys are dropped
+        packedReadSplit.updateByIds(Collections.singletonList(new Book(1L, "book1_1")));
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("cashe:book:1"));
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("cashe:book:1:v"));
+        long packedTtl = testContext.getRedis().getExpire("cashe:book:1:p", TimeUnit.MILLISECONDS);
+        assertTrue(packedTtl > 60_000 && packedTtl <= 120_000, "key outlives value " + packedTtl);
+        assertEquals(new Book(1L, "book1_1"), splitReadPacked.getByIds(Collections.singletonList(1L)).get(0));
+        assertEquals(Arrays.asList(new Book(1L, "book1_1"), null), packed.getByIds(Arrays.asList(1L, 3L)));
+
+        // a write of the split layout drops the packed entry
+        splitReadPacked.setNulls(Collections.singletonList(1L));
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("cashe:book:1:p"));
+        assertEquals(3, testContext.getRedis().opsForValue().get("cashe:book:1:v"));
+        assertNull(packedReadSplit.getByIds(Collections.singletonList(1L)).get(0));
+
+        // rollback
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1")));
+        packedReadSplit.delete(Arrays.asList(1L, 3L));
+    }
+
+    private CacheManager<Book, Long> layoutCacheManager(RedisCacheLayout layout) {
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setLayout(layout);
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setTtlMillis(60_000);
+        return new CacheManagerImpl<>(new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig),
+                testContext.getDatabase(), Book::getId, config);
+    }
+
+    @Test
+    void multiEntity() {
+        AtomicInteger roundTrips = new AtomicInteger();
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setMetrics(new CacheMetrics() {
+            @Override
+            public void recordStage(String name, Stage stage, long nanos, int batchSize) {
+                roundTrips.incrementAndGet();
+            }
+        });
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+        CacheManagerImpl<Book, Long> books = new CacheManagerImpl<>(storage, testContext.getDatabase(), Book::getId);
+        CacheManagerImpl<Book, Long> sequels = new CacheManagerImpl<>(storage, new BookDatabase() {
+            @Override
+            public String getEntityName() {
+                return "sequel";
+            }
+        }, Book::getId);
+        MultiCacheManager multi = new MultiCacheManager(storage).register(books).register(sequels);
+        assertThrows(IllegalArgumentException.class, () -> multi.register(books));
+        books.delete(Arrays.asList(1L, 3L));
+        sequels.delete(Collections.singletonList(2L));
+        Map<String, List<Long>> request = new LinkedHashMap<>();
+        request.put("book", Arrays.asList(1L, 3L));
+        request.put("sequel", Collections.singletonList(2L));
+        Map<String, List<?>> expected = new LinkedHashMap<>();
+        expected.put("book", Arrays.asList(new Book(1L, "book1"), null));
+        expected.put("sequel", Collections.singletonList(new Book(2L, "book2")));
+
+        roundTrips.set(0);
+        assertEquals(expected, multi.getByIds(request));
+        // one get and one put for all entities
+        assertEquals(2, roundTrips.get());
+        assertEquals(1, testContext.getRedis().opsForValue().get("cashe:sequel:2:v"));
+        assertEquals(new Some(null), testContext.getRedis().opsForValue().get("cashe:book:3"));
+
+        roundTrips.set(0);
+        assertEquals(expected, multi.getByIds(request));
+        assertEquals(1, roundTrips.get());
+
+        // rollback
+        books.delete(Arrays.asList(1L, 3L));
+        sequels.delete(Collections.singletonList(2L));
+    }
+
+    @Test
+    void multiEntityPutsLoadedOnFailure() {
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), new RedisCacheStorageConfig());
+        CacheManagerImpl<Book, Long> books = new CacheManagerImpl<>(storage, testContext.getDatabase(), Book::getId);
+        CacheManagerImpl<Book, Long> sequels = new CacheManagerImpl<>(storage, new BookDatabase() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                throw new IllegalStateException("database down");
+            }
+
+            @Override
+            public String getEntityName() {
+                return "sequel";
+            }
+        }, Book::getId);
+        MultiCacheManager multi = new MultiCacheManager(storage).register(sequels).register(books);
+        books.delete(Collections.singletonList(1L));
+        Map<String, List<Long>> request = new LinkedHashMap<>();
+        // the failing entity is loaded on the calling thread
+        request.put("sequel", Collections.singletonList(2L));
+        request.put("book", Collections.singletonList(1L));
+
+        assertThrows(IllegalStateException.class, () -> multi.getByIds(request));
+        assertEquals(new Some(new Book(1L, "book1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+
+        // rollback
+        books.delete(Collections.singletonList(1L));
+    }
+
+    @Test
+    void overlappingPartialLoads() throws InterruptedException {
+        CountDownLatch failing = new CountDownLatch(1);
+        CountDownLatch joined = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Database<Book, Long> database = new Database<Book, Long>() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                if (ids.contains(5L)) {
+                    joined.countDown();
+                }
+                if (ids.contains(3L)) {
+                    failing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("chunk of 3");
+                }
+                return ids.stream().map(id -> new Book(id, "book" + id)).collect(Collectors.toList());
+            }
+
+            @Override
+            public void update(Collection<Book> entities) {
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getEntityName() {
+                return "book";
+            }
+        };
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setPerIdSingleFlight(true);
+        config.setLoadChunkSize(2);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(storage, database, Book::getId, config);
+
+        // the chunk of 3 and 4 fails while the other batch joins 2 and 3, and loads 5 and 6 itself
+        CompletableFuture<List<Book>> first = CompletableFuture.supplyAsync(
+                () -> cacheManager.getByIds(Arrays.asList(1L, 2L, 3L, 4L)));
+        failing.await();
+        CompletableFuture<List<Book>> second = CompletableFuture.supplyAsync(
+                () -> cacheManager.getByIds(Arrays.asList(2L, 3L, 5L, 6L)));
+        joined.await();
+        release.countDown();
+        assertTrue(assertThrows(CompletionException.class, first::join).getCause() instanceof PartialLoadException);
+        assertTrue(assertThrows(CompletionException.class, second::join).getCause() instanceof PartialLoadException);
+
+        List<CacheValue> values = storage.get(Arrays.asList(
+                "cashe:book:1", "cashe:book:2", "cashe:book:3", "cashe:book:4", "cashe:book:5", "cashe:book:6"));
+        assertEquals(new Book(1L, "book1"), values.get(0).getValue());
+        assertEquals(new Book(2L, "book2"), values.get(1).getValue());
+        // not cached by null values
+        assertTrue(values.get(2) == null || values.get(2).isNullCache());
+        assertTrue(values.get(3) == null || values.get(3).isNullCache());
+        assertEquals(new Book(5L, "book5"), values.get(4).getValue());
+        assertEquals(new Book(6L, "book6"), values.get(5).getValue());
+    }
+
+    @Test
+    void asyncPartialLoad() {
+        Database<Book, Long> database = new BookDatabase() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                if (ids.contains(3L)) {
+                    throw new IllegalStateException("chunk of 3");
+                }
+                return ids.stream().map(id -> new Book(id, "book" + id)).collect(Collectors.toList());
+            }
+        };
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setLoadChunkSize(2);
+        AsyncCacheManagerImpl<Book, Long> cacheManager = new AsyncCacheManagerImpl<>(
+                storage, database, Book::getId, config, Runnable::run);
+
+        CompletableFuture<List<Book>> loading = cacheManager.getByIdsAsync(Arrays.asList(1L, 2L, 3L, 4L));
+        assertTrue(assertThrows(CompletionException.class, loading::join).getCause() instanceof PartialLoadException);
+
+        // the chunk loaded is cached, the failed one is not cached by null values
+        List<CacheValue> values = storage.get(Arrays.asList("cashe:book:1", "cashe:book:2", "cashe:book:3", "cashe:book:4"));
+        assertEquals(new Book(1L, "book1"), values.get(0).getValue());
+        assertEquals(new Book(2L, "book2"), values.get(1).getValue());
+        assertTrue(values.get(2) == null || values.get(2).isNullCache());
+        assertTrue(values.get(3) == null || values.get(3).isNullCache());
+    }
+
+    @Test
+    void chunkedBatches() {
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setMaxBatchSize(2);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+        List<String> keys = Arrays.asList("cashe:chunk:1", "cashe:chunk:2", "cashe:chunk:3", "cashe:chunk:4", "cashe:chunk:5");
+        storage.delete(keys);
+        Map<String, CacheValue> values = new LinkedHashMap<>();
+        for (String key : keys) {
+            values.put(key, new SimpleCacheValue(null, key));
+        }
+        assertEquals(Collections.emptyList(), storage.put(values));
+
+        // the CAS failures of all chunks are merged in order
+        values.put("cashe:chunk:3", new SimpleCacheValue(1, "cashe:chunk:3_1"));
+        assertEquals(Arrays.asList("cashe:chunk:1", "cashe:chunk:2", "cashe:chunk:4", "cashe:chunk:5"), storage.put(values));
+        List<CacheValue> cached = storage.get(keys);
+        assertEquals(5, cached.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i == 2 ? "cashe:chunk:3_1" : keys.get(i), cached.get(i).getValue());
+        }
+
+        storage.delete(keys);
+        assertTrue(storage.get(keys).stream().allMatch(CacheValue::isNullCache));
+    }
+
+    @Test
+    void coalescedWrites() {
+        AtomicInteger puts = new AtomicInteger();
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setMetrics(new CacheMetrics() {
+            @Override
+            public void recordStage(String name, Stage stage, long nanos, int batchSize) {
+                if (stage == Stage.CACHE_PUT) {
+                    puts.incrementAndGet();
+                }
+            }
+        });
+        CacheManagerImpl<Book, Long> cacheManager = new CacheManagerImpl<>(
+                testContext.getStorage(), testContext.getDatabase(), Book::getId, config);
+        cacheManager.delete(Arrays.asList(1L, 3L));
+        try (CoalescingCacheManager<Book, Long> coalescing = new CoalescingCacheManager<>(
+                cacheManager, 100, TimeUnit.MILLISECONDS, 100)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(coalescing.updateByIdsAsync(Collections.singletonList(new Book(1L, "book1_" + i))));
+            }
+            futures.add(coalescing.setNullsAsync(Collections.singletonList(3L)));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            // one CAS put for all writes, and the cache holds the latest row
+            assertEquals(1, puts.get());
+            assertEquals(new Some(new Book(1L, "book1_9")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+            assertEquals(new Some(null), testContext.getRedis().opsForValue().get("cashe:book:3"));
+        }
+
+        // rollback
+        testContext.getDatabase().update(Collections.singletonList(new Book(1L, "book1")));
+        cacheManager.delete(Arrays.asList(1L, 3L));
+    }
+
+    @Test
+    void versionsOnly() {
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setLayout(RedisCacheLayout.PACKED_READ_SPLIT);
+        RedisCacheStorage packed = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+        LettuceCacheStorage lettuce = new LettuceCacheStorage((LettuceConnectionFactory) testContext.getConnectionFactory());
+        List<String> keys = Arrays.asList("cashe:versions:1", "cashe:versions:2", "cashe:versions:3");
+        packed.delete(keys);
+
+        testContext.getStorage().put(Collections.singletonMap(keys.get(0), new SimpleCacheValue(null, "split")));
+        packed.put(Collections.singletonMap(keys.get(1), new SimpleCacheValue(null, "packed")));
+        packed.put(Collections.singletonMap(keys.get(1), new SimpleCacheValue(1, "packed")));
+        assertEquals(Arrays.asList(1, null, null), testContext.getStorage().getVersions(keys));
+        assertEquals(Arrays.asList(1, null, null), lettuce.getVersionsAsync(keys).join());
+        // the split version is the fallback while migrating
+        assertEquals(Arrays.asList(1, 2, null), packed.getVersions(keys));
+
+        // rollback
+        packed.delete(keys);
+        lettuce.close();
+    }
+
+    @Test
+    void longIds() {
+        LongCacheManagerImpl<Book> cacheManager = new LongCacheManagerImpl<>(testContext.getStorage(),
+                testContext.getDatabase(), Book::getId);
+        cacheManager.delete(Arrays.asList(1L, 2L, 3L));
+
+        List<Book> expected = Arrays.asList(new Book(2L, "book2"), null, new Book(1L, "book1"), new Book(2L, "book2"));
+        assertEquals(expected, cacheManager.getByIds(new long[]{2, 3, 1, 2}));
+        assertEquals(new Some(new Book(1L, "book1")), testContext.getRedis().opsForValue().get("cashe:book:1"));
+        assertEquals(new Some(null), testContext.getRedis().opsForValue().get("cashe:book:3"));
+        // cached, and the same as the generic path
+        assertEquals(expected, cacheManager.getByIds(new long[]{2, 3, 1, 2}));
+        assertEquals(expected, testContext.getBookCacheManager().getByIds(Arrays.asList(2L, 3L, 1L, 2L)));
+        assertEquals(Collections.emptyList(), cacheManager.getByIds(new long[0]));
+
+        // rollback
+        cacheManager.delete(Arrays.asList(1L, 2L, 3L));
+    }
+
+    @Test
+    void encodedKeys() {
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setClusterMode(true);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+        List<String> keys = Arrays.asList("cashe:encoded:1", "cashe:书:1");
+        storage.delete(keys);
+
+        Map<String, CacheValue> values = new LinkedHashMap<>();
+        keys.forEach(key -> values.put(key, new SimpleCacheValue(null, key)));
+        assertEquals(Collections.emptyList(), storage.put(values));
+        for (String key : keys) {
+            assertEquals(Boolean.TRUE, testContext.getRedis().hasKey("{" + key + "}"));
+            assertEquals(Boolean.TRUE, testContext.getRedis().hasKey("{" + key + "}:v"));
+        }
+        assertEquals(keys, storage.get(keys).stream().map(CacheValue::getValue).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 1), storage.getVersions(keys));
+
+        storage.delete(keys);
+        assertEquals(Boolean.FALSE, testContext.getRedis().hasKey("{cashe:书:1}:v"));
+    }
+
+    @Test
+    void staleWhileRevalidate() {
+        for (RedisCacheLayout layout : Arrays.asList(RedisCacheLayout.SPLIT, RedisCacheLayout.PACKED)) {
+            RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+            storageConfig.setLayout(layout);
+            RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+            CacheManagerConfig config = new CacheManagerConfig();
+            config.setTtlMillis(60_000);
+            config.setStaleWhileRevalidateMillis(5_000);
+            config.setRefreshAheadExecutor(Runnable::run);
+            CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(storage, testContext.getDatabase(), Book::getId, config);
+            List<String> keys = Collections.singletonList("cashe:book:2");
+            cacheManager.delete(Collections.singletonList(2L));
+            testContext.getDatabase().update(Collections.singletonList(new Book(2L, "book2")));
+            cacheManager.getByIds(Collections.singletonList(2L));
+            Integer version = storage.getVersions(keys).get(0);
+
+            storage.markStale(keys, 5_000);
+            CacheValue stale = storage.get(keys).get(0);
+            assertTrue(stale.isStale());
+            assertEquals(new Book(2L, "book2"), stale.getValue());
+            assertTrue(stale.getTtlMillis() <= 5_000);
+            // the writes begun before the mark fail
+            assertEquals(keys, storage.put(Collections.singletonMap(keys.get(0), new SimpleCacheValue(version, "conflict"))));
+
+            // served right away and refreshed in background
+            testContext.getDatabase().update(Collections.singletonList(new Book(2L, "book2_2")));
+            assertEquals(new Book(2L, "book2"), cacheManager.getByIds(Collections.singletonList(2L)).get(0));
+            CacheValue refreshed = storage.get(keys).get(0);
+            assertFalse(refreshed.isStale());
+            assertEquals(new Book(2L, "book2_2"), refreshed.getValue());
+            assertEquals(new Book(2L, "book2_2"), cacheManager.getByIds(Collections.singletonList(2L)).get(0));
+
+            // rollback
+            cacheManager.delete(Collections.singletonList(2L));
+        }
+    }
+
+    @Test
+    void loadLease() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BookDatabase database = new BookDatabase() {
+            @Override
+            public List<Book> load(Collection<Long> ids) {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.load(ids);
+            }
+        };
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setLoadLeaseMillis(1_000);
+        config.setLoadLeasePollMillis(10);
+        // two instances
+        CacheManager<Book, Long> instance1 = new CacheManagerImpl<>(testContext.getStorage(), database, Book::getId, config);
+        CacheManager<Book, Long> instance2 = new CacheManagerImpl<>(testContext.getStorage(), database, Book::getId, config);
+        List<String> keys = Collections.singletonList("cashe:book:1");
+        instance1.delete(Collections.singletonList(1L));
+        testContext.getRedis().delete(LEASE_KEY);
+
+        CompletableFuture<List<Book>> holder = CompletableFuture.supplyAsync(() -> instance1.getByIds(Collections.singletonList(1L)));
+        loading.await();
+        CompletableFuture<List<Book>> waiter = CompletableFuture.supplyAsync(() -> instance2.getByIds(Collections.singletonList(1L)));
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+        release.countDown();
+        assertEquals(Collections.singletonList(new Book(1L, "book1")), holder.join());
+        assertEquals(Collections.singletonList(new Book(1L, "book1")), waiter.join());
+        assertEquals(1, loads.get());
+
+        // an expired lease is taken over
+        CacheStorage storage = testContext.getStorage();
+        instance1.delete(Collections.singletonList(1L));
+        CacheValue expired = storage.getAndLease(keys, 100, false).get(0);
+        assertTrue(expired.isNullCache());
+        assertNotNull(expired.getLeaseToken());
+        CacheValue waiting = storage.getAndLease(keys, 100, false).get(0);
+        assertTrue(waiting.isLoading());
+        assertNull(waiting.getLeaseToken());
+        assertEquals(Collections.singletonList(new Book(1L, "book1")), instance2.getByIds(Collections.singletonList(1L)));
+        assertEquals(2, loads.get());
+
+        // the holder of an expired lease doesn't release the lease taken over by another caller
+        instance1.delete(Collections.singletonList(1L));
+        expired = storage.getAndLease(keys, 100, false).get(0);
+        Thread.sleep(150);
+        CacheValue taken = storage.getAndLease(keys, 1_000, false).get(0);
+        assertNotNull(taken.getLeaseToken());
+        storage.releaseLeases(Collections.singletonMap(keys.get(0), Objects.requireNonNull(expired.getLeaseToken())));
+        assertTrue(storage.getAndLease(keys, 1_000, false).get(0).isLoading());
+        storage.releaseLeases(Collections.singletonMap(keys.get(0), Objects.requireNonNull(taken.getLeaseToken())));
+        assertFalse(storage.getAndLease(keys, 1_000, false).get(0).isLoading());
+        testContext.getRedis().delete(LEASE_KEY);
+
+        // the packed layout takes the lease in its get script too
+        RedisCacheStorageConfig storageConfig = new RedisCacheStorageConfig();
+        storageConfig.setLayout(RedisCacheLayout.PACKED_READ_SPLIT);
+        RedisCacheStorage packed = new RedisCacheStorage(testContext.getConnectionFactory(), storageConfig);
+        packed.delete(keys);
+        CacheValue leased = packed.getAndLease(keys, 1_000, false).get(0);
+        assertFalse(leased.isLoading());
+        assertTrue(packed.getAndLease(keys, 1_000, false).get(0).isLoading());
+        packed.releaseLeases(Collections.singletonMap(keys.get(0), Objects.requireNonNull(leased.getLeaseToken())));
+        assertFalse(packed.getAndLease(keys, 1_000, false).get(0).isLoading());
+
+        // rollback
+        instance1.delete(Collections.singletonList(1L));
+        testContext.getRedis().delete(LEASE_KEY);
+    }
+
+    @Test
+    void degradedLeasePoll() {
+        CacheStorage redis = testContext.getStorage();
+        AtomicInteger leases = new AtomicInteger();
+        // the storage becomes unavailable after the first read
+        CacheStorage storage = new CacheStorage() {
+            @Override
+            public List<String> put(Map<String, CacheValue> values) {
+                return redis.put(values);
+            }
+
+            @Override
+            public List<CacheValue> get(Collection<String> keys) {
+                return redis.get(keys);
+            }
+
+            @Override
+            public List<CacheValue> getAndLease(Collection<String> keys, long leaseMillis, boolean withTtl) {
+                if (leases.getAndIncrement() > 0) {
+                    throw new CacheUnavailableException("unavailable");
+                }
+                return redis.getAndLease(keys, leaseMillis, withTtl);
+            }
+
+            @Override
+            public void releaseLeases(Map<String, String> leases) {
+                redis.releaseLeases(leases);
+            }
+
+            @Override
+            public void delete(Collection<String> keys) {
+                redis.delete(keys);
+            }
+
+            @Override
+            public void saveTimestampMillis(String key, long timeMillis) {
+                redis.saveTimestampMillis(key, timeMillis);
+            }
+
+            @Override
+            public long getTimestampMillis(String key) {
+                return redis.getTimestampMillis(key);
+            }
+        };
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setLoadLeaseMillis(1_000);
+        config.setLoadLeasePollMillis(10);
+        CacheManager<Book, Long> cacheManager = new CacheManagerImpl<>(storage, testContext.getDatabase(), Book::getId, config);
+        List<String> keys = Collections.singletonList("cashe:book:1");
+        cacheManager.delete(Collections.singletonList(1L));
+        testContext.getRedis().delete(LEASE_KEY);
+
+        // another caller holds the lease of 1, and 2 is leased by the first read
+        CacheValue other = redis.getAndLease(keys, 1_000, false).get(0);
+        cacheManager.delete(Collections.singletonList(2L));
+        assertEquals(Arrays.asList(new Book(1L, "book1"), new Book(2L, "book2")), cacheManager.getByIds(Arrays.asList(1L, 2L)));
+        assertEquals(2, leases.get());
+        // the lease of 2 is released, the one of the other caller is kept
+        assertTrue(redis.getAndLease(keys, 1_000, false).get(0).isLoading());
+        assertNotEquals(Boolean.TRUE, testContext.getRedis().hasKey("cashe:book:2:l"));
+
+        // rollback
+        redis.releaseLeases(Collections.singletonMap(keys.get(0), Objects.requireNonNull(other.getLeaseToken())));
+        cacheManager.delete(Arrays.asList(1L, 2L));
+    }
+}
@@ -14,11 +14,15 @@ import org.springframework.data.redis.serializer.RedisSerializer;
  */
 public class TestContext {
 
-    private final RedisConnectionFactory connectionFactory = getConnectionFactory();
+    private final RedisConnectionFactory connectionFactory = createConnectionFactory();
     private final CacheStorage storage = new RedisCacheStorage(connectionFactory);
     private final CacheManagerTest.BookDatabase database = new CacheManagerTest.BookDatabase();
     private final CacheManager<CacheManagerTest.Book, Long> bookCacheManager = new CacheManagerImpl<>(storage, database, CacheManagerTest.Book::getId);
-    private final RedisTemplate<String, Object> redis = createRedisTemplate(getConnectionFactory());
+    private final RedisTemplate<String, Object> redis = createRedisTemplate(createConnectionFactory());
+
+    public RedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
 
     public CacheStorage getStorage() {
         return storage;
@@ -36,7 +40,7 @@ public class TestContext {
         return redis;
     }
 
-    private static LettuceConnectionFactory getConnectionFactory() {
+    private static LettuceConnectionFactory createConnectionFactory() {
         RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration();
         configuration.setHostName("127.0.0.1");
         configuration.setPort(6379);
@@ -0,0 +1,81 @@
+package io.github.edsuns.bloom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:10
+ */
+class ScalableBloomFilterTest {
+
+    @Test
+    void grow() {
+        ScalableBloomFilter<Long> filter = new ScalableBloomFilter<>(1000, .01);
+        List<Long> missing = new ArrayList<>();
+        for (long id = 0; id < 10_000; id++) {
+            missing.add(-id - 1);
+        }
+        // nothing is absent before built
+        assertTrue(filter.absent(missing).isEmpty());
+
+        ExistenceFilter.Builder<Long> builder = filter.rebuild();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 5_000; id++) {
+            ids.add(id);
+        }
+        builder.put(ids.subList(0, 2_500));
+        // put while rebuilding
+        filter.put(ids.subList(2_500, 5_000));
+        builder.commit();
+        for (long id = 5_000; id < 20_000; id++) {
+            filter.put(Collections.singletonList(id));
+            ids.add(id);
+        }
+
+        // no false negatives
+        assertTrue(filter.absent(ids).isEmpty());
+        // the false positives are not counted
+        assertTrue(filter.size() > ids.size() * .98, "size " + filter.size());
+        int falsePositives = missing.size() - filter.absent(missing).size();
+        assertTrue(falsePositives < missing.size() * .02, "false positives " + falsePositives);
+    }
+
+    @Test
+    void putDuringRebuild() throws InterruptedException {
+        ScalableBloomFilter<Long> filter = new ScalableBloomFilter<>(1000, .01);
+        filter.rebuild().commit();
+        long inserts = 20_000;
+        AtomicLong visible = new AtomicLong(-1);
+        Thread writer = new Thread(() -> {
+            for (long id = 0; id < inserts; id++) {
+                List<Long> ids = Collections.singletonList(id);
+                filter.put(ids);
+                visible.set(id);
+                filter.put(ids);
+            }
+        });
+        writer.start();
+        int rebuilds = 0;
+        while (writer.isAlive() || rebuilds == 0) {
+            ExistenceFilter.Builder<Long> builder = filter.rebuild();
+            // scans the visible rows, the puts meanwhile interleave with the scan and the swap
+            builder.put(LongStream.rangeClosed(0, visible.get()).boxed().collect(Collectors.toList()));
+            builder.commit();
+            rebuilds++;
+        }
+        writer.join();
+
+        List<Long> ids = LongStream.range(0, inserts).boxed().collect(Collectors.toList());
+        assertEquals(Collections.emptySet(), filter.absent(ids), "after " + rebuilds + " rebuilds");
+    }
+}
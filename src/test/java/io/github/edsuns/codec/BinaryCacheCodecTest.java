@@ -0,0 +1,87 @@
+package io.github.edsuns.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 15:48
+ */
+class BinaryCacheCodecTest {
+    public static class Book {
+        private Long id;
+        private String name;
+
+        public Book() {
+        }
+
+        public Book(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Book book = (Book) o;
+            return Objects.equals(id, book.id) && Objects.equals(name, book.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+    @Test
+    void test() {
+        BinaryCacheCodec codec = new BinaryCacheCodec();
+        codec.register(1, Book.class);
+
+        Book book = new Book(1L, "book1");
+        byte[] binary = codec.encode(book);
+        byte[] json = new JsonCacheCodec().encode(book);
+        assertTrue(binary.length < json.length / 2, binary.length + " vs " + json.length);
+        assertEquals(book, codec.decode(binary));
+
+        assertArrayEquals(new byte[]{0}, codec.encode(null));
+        assertNull(codec.decode(codec.encode(null)));
+
+        // entries written before the migration
+        assertEquals(book, codec.decode(json));
+        assertNull(codec.decode(new JsonCacheCodec().encode(null)));
+
+        assertThrows(IllegalArgumentException.class, () -> codec.encode("unregistered"));
+        assertThrows(IllegalArgumentException.class, () -> codec.register(1, String.class));
+    }
+
+    @Test
+    void writeLegacy() {
+        BinaryCacheCodec codec = new BinaryCacheCodec(new JsonCacheCodec(), true);
+        codec.register(1, Book.class);
+        Book book = new Book(2L, "book2");
+        byte[] bytes = codec.encode(book);
+        assertEquals(book, new JsonCacheCodec().decode(bytes));
+        assertEquals(book, codec.decode(bytes));
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.edsuns.guard;
+
+import io.github.edsuns.*;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import io.github.edsuns.metrics.CacheMetrics;
+import io.github.edsuns.util.SimpleCacheValue;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 22:30
+ */
+class GuardedCacheStorageTest {
+
+    @Test
+    void circuitBreaker() throws InterruptedException {
+        SlowStorage slow = new SlowStorage();
+        GuardedCacheStorageConfig config = new GuardedCacheStorageConfig();
+        config.setReadBudgetMillis(20);
+        config.setWriteBudgetMillis(20);
+        config.setFailureThreshold(2);
+        config.setOpenMillis(100);
+        GuardedCacheStorage storage = new GuardedCacheStorage(slow, config);
+        List<String> keys = Collections.singletonList("a");
+        storage.put(Collections.singletonMap("a", new SimpleCacheValue(null, "a1")));
+        assertEquals("a1", storage.get(keys).get(0).getValue());
+
+        slow.delayMillis = 200;
+        long start = System.nanoTime();
+        assertThrows(CacheUnavailableException.class, () -> storage.get(keys));
+        assertTrue(System.nanoTime() - start < 150_000_000L);
+        assertEquals(Collections.singletonList(null), storage.getVersions(keys));
+        assertTrue(storage.isOpen());
+
+        // skipped while open, the writes are deferred
+        int calls = slow.calls.get();
+        assertThrows(CacheUnavailableException.class, () -> storage.get(keys));
+        assertEquals(Collections.emptyList(), storage.put(Collections.singletonMap("a", new SimpleCacheValue(1, "a2"))));
+        assertEquals(calls, slow.calls.get());
+        assertEquals(1, storage.getDeferredInvalidations());
+
+        // the probe replays the deferred invalidations
+        slow.delayMillis = 0;
+        Thread.sleep(150);
+        assertTrue(storage.get(keys).get(0).isNullCache());
+        assertFalse(storage.isOpen());
+        assertEquals(0, storage.getDeferredInvalidations());
+    }
+
+    @Test
+    void degradedLoad() throws InterruptedException {
+        SlowStorage slow = new SlowStorage();
+        slow.delayMillis = 200;
+        GuardedCacheStorageConfig storageConfig = new GuardedCacheStorageConfig();
+        storageConfig.setReadBudgetMillis(10);
+        GuardedCacheStorage storage = new GuardedCacheStorage(slow, storageConfig);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Database<String, Long> database = new Database<String, Long>() {
+            @Override
+            public List<String> load(Collection<Long> ids) {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Collections.singletonList("one");
+            }
+
+            @Override
+            public void update(Collection<String> entities) {
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getEntityName() {
+                return "number";
+            }
+        };
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setDegradedLoadConcurrency(1);
+        CacheManager<String, Long> cacheManager = new CacheManagerImpl<>(storage, database, s -> 1L, config);
+
+        CompletableFuture<List<String>> first = CompletableFuture.supplyAsync(
+                () -> cacheManager.getByIds(Arrays.asList(1L, 2L)));
+        loading.await();
+        // the database is protected
+        assertThrows(CacheUnavailableException.class, () -> cacheManager.getByIds(Collections.singletonList(3L)));
+        release.countDown();
+        assertEquals(Arrays.asList("one", null), first.join());
+    }
+
+    @Test
+    void asyncDegradedLoad() {
+        SlowStorage slow = new SlowStorage();
+        slow.delayMillis = 200;
+        GuardedCacheStorageConfig storageConfig = new GuardedCacheStorageConfig();
+        storageConfig.setReadBudgetMillis(10);
+        GuardedCacheStorage storage = new GuardedCacheStorage(slow, storageConfig);
+        Database<String, Long> database = new Database<String, Long>() {
+            @Override
+            public List<String> load(Collection<Long> ids) {
+                return Collections.singletonList("one");
+            }
+
+            @Override
+            public void update(Collection<String> entities) {
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getEntityName() {
+                return "number";
+            }
+        };
+        AsyncCacheManagerImpl<String, Long> cacheManager = new AsyncCacheManagerImpl<>(
+                storage, database, s -> 1L, new CacheManagerConfig(), Runnable::run);
+
+        // answered from the database within the budget, nothing is put
+        long start = System.nanoTime();
+        assertEquals(Arrays.asList("one", null), cacheManager.getByIdsAsync(Arrays.asList(1L, 2L)).join());
+        assertTrue(System.nanoTime() - start < 150_000_000L);
+        assertEquals(0, storage.getDeferredInvalidations());
+    }
+
+    @Test
+    void dropDeferredInvalidations() {
+        SlowStorage slow = new SlowStorage();
+        slow.delayMillis = 200;
+        AtomicInteger dropped = new AtomicInteger();
+        GuardedCacheStorageConfig config = new GuardedCacheStorageConfig();
+        config.setWriteBudgetMillis(10);
+        config.setMaxDeferredInvalidations(2);
+        config.setMetrics(new CacheMetrics() {
+            @Override
+            public void recordDroppedInvalidations(String name, int count) {
+                dropped.addAndGet(count);
+            }
+        });
+        GuardedCacheStorage storage = new GuardedCacheStorage(slow, config);
+
+        storage.delete(Arrays.asList("a", "b", "c"));
+        storage.deleteAsync(Collections.singletonList("d")).join();
+        assertEquals(2, storage.getDeferredInvalidations());
+        assertEquals(2, storage.getDroppedInvalidations());
+        assertEquals(2, dropped.get());
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class SlowStorage implements CacheStorage {
+        private final MemoryCacheStorage delegate = new MemoryCacheStorage();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile long delayMillis;
+
+        private void delay() {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public List<String> put(Map<String, CacheValue> values) {
+            delay();
+            return delegate.put(values);
+        }
+
+        @Override
+        public List<CacheValue> get(Collection<String> keys) {
+            delay();
+            return delegate.get(keys);
+        }
+
+        @Override
+        public void delete(Collection<String> keys) {
+            delay();
+            delegate.delete(keys);
+        }
+
+        @Override
+        public void saveTimestampMillis(String key, long timeMillis) {
+            delegate.saveTimestampMillis(key, timeMillis);
+        }
+
+        @Override
+        public long getTimestampMillis(String key) {
+            return delegate.getTimestampMillis(key);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.edsuns.hot;
+
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.util.SimpleCacheValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 21:05
+ */
+class HotKeysTest {
+
+    @Test
+    void pinHotIds() throws InterruptedException {
+        HotKeys<Integer> hotKeys = new HotKeys<>(2, 300);
+        Map<Integer, AtomicInteger> reads = new HashMap<>();
+        Map<Integer, Integer> versions = new HashMap<>();
+        AtomicInteger versionReads = new AtomicInteger();
+        Function<Collection<Integer>, Map<Integer, Integer>> versionLoader = ids -> {
+            versionReads.incrementAndGet();
+            Map<Integer, Integer> result = new HashMap<>();
+            ids.forEach(id -> result.put(id, versions.getOrDefault(id, 1)));
+            return result;
+        };
+        // id 0 and 1 are hot, the others are read once
+        for (int i = 0; i < 2000; i++) {
+            hotKeys.get(Arrays.asList(i % 2, 2 + i), ids -> read(ids, reads, versions), versionLoader);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1)), hotKeys.hotIds().keySet());
+        assertTrue(reads.get(0).get() < 10, "served locally " + reads.get(0));
+        assertEquals(1, reads.get(2).get());
+        assertEquals(0, versionReads.get());
+
+        // revalidated by the version after the interval, the value is not read again while unchanged
+        int before = reads.get(0).get();
+        Thread.sleep(320);
+        Map<Integer, CacheValue> values = hotKeys.get(Collections.singletonList(0),
+                ids -> read(ids, reads, versions), versionLoader);
+        assertEquals("0", values.get(0).getValue());
+        assertEquals(before, reads.get(0).get());
+        assertEquals(1, versionReads.get());
+        hotKeys.get(Collections.singletonList(0), ids -> read(ids, reads, versions), versionLoader);
+        assertEquals(1, versionReads.get());
+
+        // read again once the version changes
+        versions.put(0, 2);
+        Thread.sleep(320);
+        hotKeys.get(Collections.singletonList(0), ids -> read(ids, reads, versions), versionLoader);
+        assertEquals(before + 1, reads.get(0).get());
+        assertEquals(2, versionReads.get());
+
+        hotKeys.invalidate(Collections.singletonList(0));
+        hotKeys.get(Collections.singletonList(0), ids -> read(ids, reads, versions), versionLoader);
+        assertEquals(before + 2, reads.get(0).get());
+    }
+
+    @Test
+    void skipPinReadBeforeUnpin() {
+        HotKeys<Integer> hotKeys = new HotKeys<>(1, 60_000);
+        Map<Integer, AtomicInteger> reads = new HashMap<>();
+        Map<Integer, Integer> versions = new HashMap<>();
+        Function<Collection<Integer>, Map<Integer, Integer>> versionLoader = ids -> Collections.emptyMap();
+        for (int i = 0; i < 10; i++) {
+            hotKeys.get(Collections.singletonList(1), ids -> {
+                // unpinned by a write while the read is in flight
+                hotKeys.invalidate(ids);
+                return read(ids, reads, versions);
+            }, versionLoader);
+        }
+        assertEquals(Collections.singleton(1), hotKeys.hotIds().keySet());
+        assertEquals(10, reads.get(1).get());
+
+        hotKeys.get(Collections.singletonList(1), ids -> read(ids, reads, versions), versionLoader);
+        hotKeys.get(Collections.singletonList(1), ids -> read(ids, reads, versions), versionLoader);
+        assertEquals(11, reads.get(1).get());
+    }
+
+    @Test
+    void admitByFrequency() {
+        HotKeys<Integer> hotKeys = new HotKeys<>(3, 60_000);
+        Function<Collection<Integer>, Map<Integer, Integer>> versionLoader = ids -> Collections.emptyMap();
+        Map<Integer, AtomicInteger> reads = new HashMap<>();
+        // id i is read i times
+        for (int i = 1; i <= 8; i++) {
+            for (int j = 0; j < i; j++) {
+                hotKeys.get(Collections.singletonList(i), ids -> read(ids, reads, new HashMap<>()), versionLoader);
+            }
+        }
+        assertEquals(Arrays.asList(8, 7, 6), new ArrayList<>(hotKeys.hotIds().keySet()));
+    }
+
+    private static Map<Integer, CacheValue> read(Collection<Integer> ids, Map<Integer, AtomicInteger> reads,
+                                                 Map<Integer, Integer> versions) {
+        Map<Integer, CacheValue> result = new HashMap<>();
+        for (Integer id : ids) {
+            reads.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+            SimpleCacheValue value = new SimpleCacheValue(versions.getOrDefault(id, 1), String.valueOf(id));
+            result.put(id, value);
+        }
+        return result;
+    }
+}
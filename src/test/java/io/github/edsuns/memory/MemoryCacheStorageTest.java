@@ -0,0 +1,115 @@
+package io.github.edsuns.memory;
+
+import io.github.edsuns.CacheManager;
+import io.github.edsuns.CacheManagerImpl;
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.Database;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.util.SimpleCacheValue;
+import io.github.edsuns.util.Versions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:10
+ */
+class MemoryCacheStorageTest {
+
+    @Test
+    void versionedPut() {
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        CacheValue absent = storage.get(Collections.singletonList("a")).get(0);
+        assertTrue(absent.isNullCache());
+        assertNull(absent.getVersion());
+
+        Map<String, CacheValue> values = new LinkedHashMap<>();
+        values.put("a", new SimpleCacheValue(null, "a1"));
+        values.put("b", new SimpleCacheValue(null, null));
+        assertEquals(Collections.emptyList(), storage.put(values));
+
+        List<CacheValue> cached = storage.get(Arrays.asList("a", "b"));
+        assertEquals("a1", cached.get(0).getValue());
+        assertEquals(1, cached.get(0).getVersion());
+        assertFalse(cached.get(0).isNullCache());
+        // null cache is a hit
+        assertNull(cached.get(1).getValue());
+        assertEquals(1, cached.get(1).getVersion());
+        assertFalse(cached.get(1).isNullCache());
+
+        values.put("a", new SimpleCacheValue(1, "a2"));
+        values.put("b", new SimpleCacheValue(null, "b2"));
+        values.put("c", new SimpleCacheValue(3, "c2"));
+        assertEquals(Arrays.asList("b", "c"), storage.put(values));
+        assertEquals("a2", storage.get(Collections.singletonList("a")).get(0).getValue());
+        assertEquals(2, storage.get(Collections.singletonList("a")).get(0).getVersion());
+
+        storage.delete(Arrays.asList("a", "b"));
+        assertNull(storage.get(Collections.singletonList("a")).get(0).getVersion());
+        assertEquals(1, Versions.next(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void ttl() throws InterruptedException {
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        storage.put(Collections.singletonMap("a", new SimpleCacheValue(null, "a1")), new TimeToLive(50, 0, 0));
+        Thread.sleep(70);
+        // the version outlives the value
+        CacheValue expired = storage.get(Collections.singletonList("a")).get(0);
+        assertTrue(expired.isNullCache());
+        assertEquals(1, expired.getVersion());
+        assertEquals(Collections.singletonList("a"),
+                storage.put(Collections.singletonMap("a", new SimpleCacheValue(null, "a2"))));
+        Thread.sleep(50);
+        assertNull(storage.get(Collections.singletonList("a")).get(0).getVersion());
+        assertEquals(0, storage.size());
+    }
+
+    @Test
+    void bounded() {
+        MemoryCacheStorage storage = new MemoryCacheStorage(100);
+        for (int i = 0; i < 1000; i++) {
+            storage.put(Collections.singletonMap("k" + i, new SimpleCacheValue(null, i)));
+        }
+        assertTrue(storage.size() <= 100);
+        storage.saveTimestampMillis("t", 42);
+        assertEquals(42, storage.getTimestampMillis("t"));
+    }
+
+    @Test
+    void cacheManager() {
+        Map<Long, String> rows = new HashMap<>();
+        rows.put(1L, "one");
+        Database<String, Long> database = new Database<>() {
+            @Override
+            public List<String> load(Collection<Long> ids) {
+                List<String> result = new ArrayList<>();
+                ids.forEach(id -> Optional.ofNullable(rows.get(id)).ifPresent(result::add));
+                return result;
+            }
+
+            @Override
+            public void update(Collection<String> entities) {
+            }
+
+            @Override
+            public List<Long> getIdsByUpdatedBetween(long start, long end) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getEntityName() {
+                return "number";
+            }
+        };
+        CacheManager<String, Long> cacheManager = new CacheManagerImpl<>(new MemoryCacheStorage(), database,
+                s -> s.equals("one") ? 1L : 2L);
+        assertEquals(Arrays.asList("one", null), cacheManager.getByIds(Arrays.asList(1L, 2L)));
+        rows.put(2L, "two");
+        // null cached
+        assertEquals(Arrays.asList("one", null), cacheManager.getByIds(Arrays.asList(1L, 2L)));
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.edsuns.metrics;
+
+import io.github.edsuns.*;
+import io.github.edsuns.memory.MemoryCacheStorage;
+import io.github.edsuns.util.SimpleCacheValue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 19:58
+ */
+class MicrometerCacheMetricsTest {
+
+    @Test
+    void record() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MemoryCacheStorage storage = new MemoryCacheStorage();
+        CacheManagerConfig config = new CacheManagerConfig();
+        config.setMetrics(new MicrometerCacheMetrics(registry));
+        CacheManager<String, Long> cacheManager = new CacheManagerImpl<>(storage, new NumberDatabase(storage),
+                s -> s.equals("one") ? 1L : 2L, config);
+
+        cacheManager.getByIds(Arrays.asList(1L, 2L));
+        cacheManager.getByIds(Arrays.asList(1L, 2L));
+        assertEquals(1, gets(registry, "hit"));
+        assertEquals(1, gets(registry, "null_hit"));
+        assertEquals(2, gets(registry, "miss"));
+        assertEquals(1, registry.get("cashe.stage").tag("stage", "database_load").timer().count());
+        assertEquals(2, registry.get("cashe.stage").tag("stage", "get_by_ids").timer().count());
+        assertEquals(4, registry.get("cashe.batch.size").tag("stage", "get_by_ids").summary().totalAmount());
+        assertEquals(1, registry.get("cashe.single.flight").tag("role", "owned").counter().count());
+
+        // the database updates the cache concurrently
+        cacheManager.updateByIds(Collections.singletonList("one"));
+        assertEquals(1, registry.get("cashe.conflicts").tag("name", "number").counter().count());
+    }
+
+    private static double gets(MeterRegistry registry, String result) {
+        return registry.get("cashe.gets").tag("name", "number").tag("result", result).counter().count();
+    }
+
+    @ParametersAreNonnullByDefault
+    private static class NumberDatabase implements Database<String, Long> {
+        private final CacheStorage storage;
+
+        NumberDatabase(CacheStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public List<String> load(Collection<Long> ids) {
+            return ids.contains(1L) ? Collections.singletonList("one") : Collections.emptyList();
+        }
+
+        @Override
+        public void update(Collection<String> entities) {
+            CacheValue current = storage.get(Collections.singletonList("cashe:number:1")).get(0);
+            storage.put(Collections.singletonMap("cashe:number:1", new SimpleCacheValue(current.getVersion(), "1")));
+        }
+
+        @Override
+        public List<Long> getIdsByUpdatedBetween(long start, long end) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getEntityName() {
+            return "number";
+        }
+    }
+}
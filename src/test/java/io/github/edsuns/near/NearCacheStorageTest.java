@@ -0,0 +1,56 @@
+package io.github.edsuns.near;
+
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TestContext;
+import io.github.edsuns.redis.RedisInvalidationChannel;
+import io.github.edsuns.util.SimpleCacheValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 11:40
+ */
+class NearCacheStorageTest {
+    private static final String KEY = "cashe:near:1";
+
+    private final TestContext testContext = new TestContext();
+    private final RedisInvalidationChannel channelA = new RedisInvalidationChannel(testContext.getConnectionFactory());
+    private final RedisInvalidationChannel channelB = new RedisInvalidationChannel(testContext.getConnectionFactory());
+    private final NearCacheStorage a = new NearCacheStorage(testContext.getStorage(), 100, 60_000, channelA);
+    private final NearCacheStorage b = new NearCacheStorage(testContext.getStorage(), 100, 60_000, channelB);
+
+    @AfterEach
+    void tearDown() {
+        testContext.getStorage().delete(Collections.singletonList(KEY));
+        channelA.close();
+        channelB.close();
+    }
+
+    @Test
+    void test() throws InterruptedException {
+        testContext.getStorage().delete(Collections.singletonList(KEY));
+        assertTrue(a.put(Collections.singletonMap(KEY, new SimpleCacheValue(null, "v1"))).isEmpty());
+
+        CacheValue cached = b.get(Collections.singletonList(KEY)).get(0);
+        assertEquals("v1", cached.getValue());
+        assertEquals(1, cached.getVersion());
+
+        // served locally even after the storage changed behind the near cache
+        testContext.getStorage().put(Collections.singletonMap(KEY, new SimpleCacheValue(1, "v2")));
+        assertEquals("v1", b.get(Collections.singletonList(KEY)).get(0).getValue());
+
+        assertTrue(a.put(Collections.singletonMap(KEY, new SimpleCacheValue(2, "v3"))).isEmpty());
+        for (int i = 0; i < 50 && "v1".equals(b.get(Collections.singletonList(KEY)).get(0).getValue()); i++) {
+            Thread.sleep(20);
+        }
+        List<CacheValue> values = b.get(Collections.singletonList(KEY));
+        assertEquals("v3", values.get(0).getValue());
+        assertEquals(3, values.get(0).getVersion());
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.edsuns.redis;
+
+import io.github.edsuns.CacheValue;
+import io.github.edsuns.TestContext;
+import io.github.edsuns.TimeToLive;
+import io.github.edsuns.util.SimpleCacheValue;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.RedisCallback;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 23:40
+ */
+class RedisCacheStorageTest {
+    private final TestContext testContext = new TestContext();
+
+    @Test
+    void lanesByNode() {
+        RedisCacheStorageConfig config = new RedisCacheStorageConfig();
+        config.setClusterMode(true);
+        config.setMaxBatchSize(100);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), config) {
+            @Nullable
+            @Override
+            String[] loadSlotOwners() {
+                // three nodes
+                String[] owners = new String[16384];
+                for (int slot = 0; slot < owners.length; slot++) {
+                    owners[slot] = "node" + slot * 3 / owners.length;
+                }
+                return owners;
+            }
+        };
+        List<String> keys = IntStream.range(0, 1000).mapToObj(i -> "cashe:book:" + i).collect(Collectors.toList());
+
+        // a group per slot since every key is tagged by itself
+        long slots = keys.stream().map(key -> ClusterSlotHashUtil.calculateSlot(storage.valueKey(key))).distinct().count();
+        assertEquals(slots, storage.batchGroups(keys).size());
+
+        List<List<int[]>> lanes = storage.batchLanes(keys);
+        assertEquals(3, lanes.size());
+        Set<Integer> covered = new HashSet<>();
+        for (List<int[]> lane : lanes) {
+            Set<Integer> nodes = new HashSet<>();
+            for (int[] group : lane) {
+                for (int i : group) {
+                    int slot = ClusterSlotHashUtil.calculateSlot(storage.valueKey(keys.get(i)));
+                    nodes.add(slot * 3 / 16384);
+                    assertTrue(covered.add(i));
+                }
+            }
+            assertEquals(1, nodes.size());
+        }
+        assertEquals(keys.size(), covered.size());
+    }
+
+    @Test
+    void pipelinedLane() {
+        RedisCacheStorageConfig config = new RedisCacheStorageConfig();
+        config.setClusterMode(true);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), config) {
+            @Nullable
+            @Override
+            String[] loadSlotOwners() {
+                // a single node, so the groups of all slots are pipelined in one lane
+                String[] owners = new String[16384];
+                Arrays.fill(owners, "node");
+                return owners;
+            }
+        };
+        List<String> keys = IntStream.range(0, 50).mapToObj(i -> "cashe:pipelined:" + i).collect(Collectors.toList());
+        assertEquals(1, storage.batchLanes(keys).size());
+        storage.delete(keys);
+        // the scripts are run alone after NOSCRIPT
+        testContext.getRedis().execute((RedisCallback<String>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+
+        Map<String, CacheValue> values = new LinkedHashMap<>();
+        keys.forEach(key -> values.put(key, new SimpleCacheValue(null, key)));
+        assertEquals(Collections.emptyList(), storage.put(values, new TimeToLive(60_000, 60_000, 0)));
+        List<CacheValue> cached = storage.get(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), cached.get(i).getValue());
+            assertEquals(1, cached.get(i).getVersion());
+        }
+        assertEquals(Collections.nCopies(keys.size(), 1), storage.getVersions(keys));
+        // the ttls are read only if asked
+        assertTrue(cached.stream().allMatch(value -> value.getTtlMillis() < 0));
+        assertTrue(storage.get(keys, true).stream().allMatch(value -> value.getTtlMillis() > 0));
+
+        // the failed keys of all groups come back in order
+        assertEquals(keys, storage.put(values));
+
+        storage.delete(keys);
+        assertTrue(storage.get(keys).stream().allMatch(value -> value.isNullCache() && value.getVersion() == null));
+    }
+
+    @Test
+    void trimExpiredPacked() throws InterruptedException {
+        RedisCacheStorageConfig config = new RedisCacheStorageConfig();
+        config.setLayout(RedisCacheLayout.PACKED);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), config);
+        List<String> keys = Collections.singletonList("cashe:trim:1");
+        byte[] packedKey = "cashe:trim:1:p".getBytes(StandardCharsets.UTF_8);
+        storage.delete(keys);
+        assertEquals(Collections.emptyList(), storage.put(Collections.singletonMap(keys.get(0),
+                new SimpleCacheValue(null, "value")), new TimeToLive(100, 100, 0)));
+        Thread.sleep(150);
+
+        // the expired value reads as absent with its version, and is trimmed off the entry
+        CacheValue expired = storage.get(keys).get(0);
+        assertTrue(expired.isNullCache());
+        assertEquals(1, expired.getVersion());
+        byte[] entry = testContext.getRedis().execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(packedKey));
+        assertTrue(new String(Objects.requireNonNull(entry), StandardCharsets.UTF_8).matches("1:\\d+:"));
+        Long ttl = testContext.getRedis().execute((RedisCallback<Long>) connection -> connection.keyCommands().pTtl(packedKey));
+        assertTrue(ttl != null && ttl > 0, "ttl " + ttl);
+        assertEquals(Collections.singletonList(1), storage.getVersions(keys));
+
+        storage.delete(keys);
+    }
+
+    @Test
+    void lanesByChunk() {
+        RedisCacheStorageConfig config = new RedisCacheStorageConfig();
+        config.setMaxBatchSize(100);
+        RedisCacheStorage storage = new RedisCacheStorage(testContext.getConnectionFactory(), config);
+        List<String> keys = IntStream.range(0, 250).mapToObj(i -> "cashe:book:" + i).collect(Collectors.toList());
+
+        List<List<int[]>> lanes = storage.batchLanes(keys);
+        assertEquals(3, lanes.size());
+        assertEquals(Arrays.asList(100, 100, 50),
+                lanes.stream().map(lane -> lane.get(0).length).collect(Collectors.toList()));
+    }
+}
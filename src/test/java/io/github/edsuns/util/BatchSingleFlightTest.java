@@ -0,0 +1,72 @@
+package io.github.edsuns.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 12:41
+ */
+class BatchSingleFlightTest {
+
+    @Test
+    void overlappingBatches() throws Exception {
+        BatchSingleFlight<Integer, String> single = new BatchSingleFlight<>();
+        Map<Integer, Integer> loadCounts = new ConcurrentHashMap<>();
+        CountDownLatch firstLoading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<Integer, String>> first = executor.submit(() -> single.call(Arrays.asList(1, 2, 3), ids -> {
+                firstLoading.countDown();
+                await(release);
+                return load(ids, loadCounts);
+            }));
+            firstLoading.await();
+            Future<Map<Integer, String>> second = executor.submit(() ->
+                    single.call(Arrays.asList(2, 3, 4), ids -> load(ids, loadCounts)));
+            // id 4 is loaded while 2 and 3 are still in flight
+            for (int i = 0; i < 100 && !loadCounts.containsKey(4); i++) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertEquals(expected(1, 2, 3), first.get());
+            assertEquals(expected(2, 3, 4), second.get());
+            assertEquals(expected(1, 2, 3, 4).keySet(), loadCounts.keySet());
+            loadCounts.values().forEach(count -> assertEquals(1, count));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void missingValue() {
+        BatchSingleFlight<Integer, String> single = new BatchSingleFlight<>();
+        Map<Integer, String> result = single.call(Arrays.asList(1, 2), ids -> Collections.singletonMap(1, "1"));
+        assertEquals("1", result.get(1));
+        assertEquals(2, result.size());
+    }
+
+    private static Map<Integer, String> load(Collection<Integer> ids, Map<Integer, Integer> loadCounts) {
+        ids.forEach(id -> loadCounts.merge(id, 1, Integer::sum));
+        return ids.stream().collect(Collectors.toMap(id -> id, String::valueOf));
+    }
+
+    private static Map<Integer, String> expected(Integer... ids) {
+        return Arrays.stream(ids).collect(Collectors.toMap(id -> id, String::valueOf));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
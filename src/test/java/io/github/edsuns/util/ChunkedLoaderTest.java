@@ -0,0 +1,111 @@
+package io.github.edsuns.util;
+
+import io.github.edsuns.PartialLoadException;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author edsuns@qq.com
+ * @since 2026/10/17 20:30
+ */
+class ChunkedLoaderTest {
+
+    @Test
+    void boundedChunks() {
+        ChunkedLoader loader = new ChunkedLoader(3, 2, 0, null);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> ids = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+
+        List<Integer> loaded = loader.load(ids, chunk -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            chunkSizes.add(chunk.size());
+            sleep(20);
+            running.decrementAndGet();
+            return new ArrayList<>(chunk);
+        });
+        assertEquals(ids, loaded);
+        assertEquals(4, chunkSizes.size());
+        assertTrue(chunkSizes.stream().allMatch(size -> size <= 3));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void sharedWorkers() {
+        ChunkedLoader loader = new ChunkedLoader(1, 3, 0, null);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> ids = IntStream.range(0, 8).boxed().collect(Collectors.toList());
+
+        // three loads of 8 chunks at the same time, each caller with the 2 shared workers at most
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        List<CompletableFuture<List<Integer>>> loads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            loads.add(CompletableFuture.supplyAsync(() -> loader.load(ids, chunk -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                running.decrementAndGet();
+                return new ArrayList<>(chunk);
+            }), callers));
+        }
+        loads.forEach(load -> assertEquals(ids, load.join()));
+        callers.shutdown();
+        assertTrue(maxRunning.get() <= 5, "bounded by callers and shared workers " + maxRunning);
+    }
+
+    @Test
+    void partialResults() {
+        ChunkedLoader loader = new ChunkedLoader(2, 2, 0, null);
+        List<Integer> ids = Arrays.asList(1, 2, 3, 4, 5);
+
+        PartialLoadException e = assertThrows(PartialLoadException.class, () -> loader.load(ids, chunk -> {
+            if (chunk.contains(3)) {
+                throw new IllegalStateException("chunk of 3");
+            }
+            return new ArrayList<>(chunk);
+        }));
+        assertEquals(Arrays.asList(1, 2, 5), e.getLoaded());
+        assertEquals(Arrays.asList(3, 4), e.getFailedIds());
+        assertEquals("chunk of 3", e.getCause().getMessage());
+
+        // nothing loaded
+        assertThrows(IllegalStateException.class, () -> loader.load(ids, chunk -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    @Test
+    void adaptiveChunkSize() {
+        ChunkedLoader loader = new ChunkedLoader(64, 4, 5, null);
+        List<Integer> ids = IntStream.range(0, 256).boxed().collect(Collectors.toList());
+
+        loader.load(ids, chunk -> {
+            sleep(20);
+            return new ArrayList<>(chunk);
+        });
+        assertEquals(8, loader.getChunkSize());
+
+        for (int i = 0; i < 20; i++) {
+            loader.load(ids, ArrayList::new);
+        }
+        assertEquals(64, loader.getChunkSize());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}